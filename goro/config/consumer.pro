@@ -4,6 +4,10 @@
 -dontwarn rx.Observable
 -dontwarn rx.Observable$OnSubscribe
 -dontwarn rx.Subscriber
+-dontwarn rx.Producer
+
+# Ignore warnings caused by ReactiveGoro
+-dontwarn org.reactivestreams.**
 
 # Ignore warnings caused by AsyncGoro
 -dontwarn com.stanfy.enroscar.async.Async
@@ -0,0 +1,547 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Base for Goro futures.
+ * The whole lifecycle is kept in a single atomic state word, result or error is stored inline,
+ * observers and blocked readers are pushed to an intrusive stack with CAS.
+ * No monitors are used.
+ * @param <T> result type
+ */
+abstract class AtomicFuture<T> implements ObservableFuture<T> {
+
+  /** Immediate executor. */
+  static final Executor IMMEDIATE = new Executor() {
+    @Override
+    public void execute(final @SuppressWarnings("NullableProblems") Runnable command) {
+      command.run();
+    }
+  };
+
+  /** Possible states. Values greater than {@link #COMPLETING} are final. */
+  static final int NEW = 0,
+      RUNNING = 1,
+      COMPLETING = 2,
+      SUCCESS = 3,
+      FAILURE = 4,
+      CANCELLED = 5,
+      INTERRUPTING = 6,
+      INTERRUPTED = 7;
+
+  /** State updater. */
+  private static final AtomicIntegerFieldUpdater<AtomicFuture> STATE =
+      AtomicIntegerFieldUpdater.newUpdater(AtomicFuture.class, "state");
+
+  /** Stack updater. */
+  private static final AtomicReferenceFieldUpdater<AtomicFuture, Node> STACK =
+      AtomicReferenceFieldUpdater.newUpdater(AtomicFuture.class, Node.class, "stack");
+
+  /** Progress observers updater. */
+  private static final AtomicReferenceFieldUpdater<AtomicFuture, ProgressNode> PROGRESS =
+      AtomicReferenceFieldUpdater.newUpdater(AtomicFuture.class, ProgressNode.class, "progress");
+
+  /** Marks the stack as already released. */
+  private static final Node RELEASED = new Node();
+
+  /** State word. */
+  private volatile int state;
+
+  /** Top of the observers and waiters stack. */
+  private volatile Node stack;
+
+  /** Progress observers. */
+  private volatile ProgressNode progress;
+
+  /** Result or error. Published by the state write. */
+  private Object outcome;
+
+  final int state() {
+    return state;
+  }
+
+  final boolean compareAndSetState(final int expect, final int update) {
+    return STATE.compareAndSet(this, expect, update);
+  }
+
+  /**
+   * Complete with a result.
+   * @param expect state this future must be in
+   * @return whether this call has completed the future
+   */
+  final boolean set(final int expect, final T value) {
+    return complete(expect, SUCCESS, value);
+  }
+
+  /**
+   * Complete with an error.
+   * @param expect state this future must be in
+   * @return whether this call has completed the future
+   */
+  final boolean setException(final int expect, final Throwable error) {
+    return complete(expect, FAILURE, error);
+  }
+
+  private boolean complete(final int expect, final int finalState, final Object outcome) {
+    if (!STATE.compareAndSet(this, expect, COMPLETING)) {
+      return false;
+    }
+    this.outcome = outcome;
+    state = finalState;
+    release();
+    return true;
+  }
+
+  @Override
+  public boolean cancel(final boolean mayInterruptIfRunning) {
+    int s;
+    int update;
+    do {
+      s = state;
+      if (s > RUNNING) {
+        return false;
+      }
+      update = s == RUNNING && mayInterruptIfRunning ? INTERRUPTING : CANCELLED;
+    } while (!STATE.compareAndSet(this, s, update));
+
+    if (update == INTERRUPTING) {
+      try {
+        interruptTask();
+      } finally {
+        state = INTERRUPTED;
+      }
+    }
+    release();
+    return true;
+  }
+
+  /** Invoked by {@link #cancel(boolean)} when running task must be interrupted. */
+  protected void interruptTask() {
+    // nothing by default
+  }
+
+  /**
+   * Invoked once the future gets its final state, before observers are notified.
+   * @param finalState one of final states
+   * @param outcome result, error or {@code null} for cancellation
+   */
+  protected void done(final int finalState, final Object outcome) {
+    // nothing by default
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return state >= CANCELLED;
+  }
+
+  @Override
+  public boolean isDone() {
+    return state > COMPLETING;
+  }
+
+  @Override
+  public T get() throws InterruptedException, ExecutionException {
+    int s = state;
+    if (s <= COMPLETING) {
+      s = await(false, 0L);
+    }
+    return report(s);
+  }
+
+  @Override
+  public T get(final long timeout, final @SuppressWarnings("NullableProblems") TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    int s = state;
+    if (s <= COMPLETING) {
+      s = await(true, unit.toNanos(timeout));
+      if (s <= COMPLETING) {
+        throw new TimeoutException();
+      }
+    }
+    return report(s);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T report(final int s) throws ExecutionException {
+    if (s == SUCCESS) {
+      return (T) outcome;
+    }
+    if (s == FAILURE) {
+      throw new ExecutionException((Throwable) outcome);
+    }
+    throw new CancellationException("Task was canceled");
+  }
+
+  private int await(final boolean timed, final long nanos) throws InterruptedException {
+    final long deadline = timed ? System.nanoTime() + nanos : 0L;
+    Waiter waiter = null;
+    for (;;) {
+      int s = state;
+      if (s > COMPLETING) {
+        if (waiter != null) {
+          waiter.thread = null;
+        }
+        return s;
+      }
+      if (s == COMPLETING) {
+        // completion is in progress
+        Thread.yield();
+        continue;
+      }
+      if (Thread.interrupted()) {
+        if (waiter != null) {
+          removeWaiter(waiter);
+        }
+        throw new InterruptedException();
+      }
+      if (waiter == null) {
+        waiter = new Waiter();
+        if (!push(waiter)) {
+          waiter = null;
+          Thread.yield();
+        }
+        continue;
+      }
+      if (timed) {
+        long left = deadline - System.nanoTime();
+        if (left <= 0L) {
+          removeWaiter(waiter);
+          return state;
+        }
+        LockSupport.parkNanos(this, left);
+      } else {
+        LockSupport.park(this);
+      }
+    }
+  }
+
+  /** Use in tests only. */
+  final int stackSize() {
+    int size = 0;
+    for (Node node = stack; node != null && node != RELEASED; node = node.next) {
+      size++;
+    }
+    return size;
+  }
+
+  private boolean push(final Node node) {
+    for (;;) {
+      Node head = stack;
+      if (head == RELEASED) {
+        return false;
+      }
+      node.next = head;
+      if (STACK.compareAndSet(this, head, node)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Unlink a waiter that has timed out or has been interrupted, together with other such waiters.
+   * Same as {@code FutureTask.removeWaiter}: restarts when it races with another removal.
+   * Observers are never unlinked, and the stack is not modified once released.
+   */
+  private void removeWaiter(final Waiter waiter) {
+    waiter.thread = null;
+    retry:
+    for (;;) {
+      Node pred = null;
+      Node q = stack;
+      if (q == RELEASED) {
+        return;
+      }
+      while (q != null) {
+        Node next = q.next;
+        if (!(q instanceof Waiter) || ((Waiter) q).thread != null) {
+          pred = q;
+        } else if (pred != null) {
+          pred.next = next;
+          if (pred instanceof Waiter && ((Waiter) pred).thread == null) {
+            // pred has been removed meanwhile
+            continue retry;
+          }
+        } else if (!STACK.compareAndSet(this, q, next)) {
+          continue retry;
+        }
+        q = next;
+      }
+      return;
+    }
+  }
+
+  private void release() {
+    done(state, outcome);
+    progress = null;
+
+    // links are only read from here: concurrent removeWaiter calls may still unlink dead waiters
+    Node head = STACK.getAndSet(this, RELEASED);
+
+    // wake up waiters
+    int count = 0;
+    ObserverNode<?> single = null;
+    for (Node node = head; node != null; node = node.next) {
+      if (node instanceof Waiter) {
+        Waiter waiter = (Waiter) node;
+        Thread t = waiter.thread;
+        if (t != null) {
+          waiter.thread = null;
+          LockSupport.unpark(t);
+        }
+      } else {
+        count++;
+        single = (ObserverNode<?>) node;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    if (count == 1) {
+      single.executor.execute(single);
+      return;
+    }
+
+    // restore subscription order
+    ObserverNode<?>[] observers = new ObserverNode<?>[count];
+    int index = count;
+    for (Node node = head; node != null; node = node.next) {
+      if (!(node instanceof Waiter)) {
+        observers[--index] = (ObserverNode<?>) node;
+      }
+    }
+
+    // one post per executor, a failing executor does not prevent others from being used
+    Throwable failure = null;
+    for (int i = 0; i < count; i++) {
+      ObserverNode<?> first = observers[i];
+      if (first == null) {
+        continue;
+      }
+      Executor executor = first.executor;
+      int size = 1;
+      for (int j = i + 1; j < count; j++) {
+        if (observers[j] != null && observers[j].executor == executor) {
+          size++;
+        }
+      }
+      Runnable command = first;
+      if (size > 1) {
+        ObserverNode<?>[] batch = new ObserverNode<?>[size];
+        batch[0] = first;
+        for (int j = i + 1, k = 1; k < size; j++) {
+          if (observers[j] != null && observers[j].executor == executor) {
+            batch[k++] = observers[j];
+            observers[j] = null;
+          }
+        }
+        command = new Batch(batch);
+      }
+      try {
+        executor.execute(command);
+      } catch (RuntimeException | Error e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    rethrow(failure);
+  }
+
+  /** Rethrow an unchecked throwable, if any. */
+  static void rethrow(final Throwable failure) {
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+  }
+
+  @Override
+  public void subscribe(final Executor executor, final FutureObserver<T> observer) {
+    ObserverNode<T> node = new ObserverNode<>(this, executor, observer);
+    if (!push(node)) {
+      executor.execute(node);
+    }
+  }
+
+  @Override
+  public void subscribe(final FutureObserver<T> observer) {
+    subscribe(IMMEDIATE, observer);
+  }
+
+  @Override
+  public void subscribeProgress(final Executor executor, final long minIntervalMillis,
+                                final ProgressObserver observer) {
+    if (executor == null || observer == null) {
+      throw new IllegalArgumentException("Executor and observer must not be null");
+    }
+    if (isDone()) {
+      return;
+    }
+    ProgressNode node = new ProgressNode(this, executor, minIntervalMillis, observer);
+    ProgressNode head;
+    do {
+      head = progress;
+      node.next = head;
+    } while (!PROGRESS.compareAndSet(this, head, node));
+  }
+
+  /**
+   * Pass a progress value to observers.
+   * @param value progress value
+   */
+  final void reportProgress(final Object value) {
+    for (ProgressNode node = progress; node != null; node = node.next) {
+      node.offer(value);
+    }
+  }
+
+  /** Stack node. */
+  static class Node {
+    /** Next node. */
+    Node next;
+  }
+
+  /** Thread blocked in {@code get()}. */
+  private static final class Waiter extends Node {
+    /** Blocked thread. Reset when the thread leaves. */
+    volatile Thread thread = Thread.currentThread();
+  }
+
+  /** Observer to notify on its executor. Delivers an already computed outcome. */
+  static final class ObserverNode<T> extends Node implements Runnable {
+    /** Observed future. */
+    private final AtomicFuture<T> future;
+    /** Where to notify. */
+    final Executor executor;
+    /** Whom to notify. */
+    final FutureObserver<T> observer;
+
+    ObserverNode(final AtomicFuture<T> future, final Executor executor, final FutureObserver<T> observer) {
+      this.future = future;
+      this.executor = executor;
+      this.observer = observer;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void run() {
+      int s = future.state;
+      if (s == SUCCESS) {
+        observer.onSuccess((T) future.outcome);
+      } else if (s == FAILURE) {
+        observer.onError((Throwable) future.outcome);
+      }
+      // cancelled futures do not notify observers
+    }
+  }
+
+  /** Observers sharing the same executor. */
+  private static final class Batch implements Runnable {
+    /** Observers in subscription order. */
+    private final ObserverNode<?>[] observers;
+
+    Batch(final ObserverNode<?>[] observers) {
+      this.observers = observers;
+    }
+
+    @Override
+    public void run() {
+      // an observer failure must not prevent others from being notified, the first one is rethrown
+      Throwable failure = null;
+      for (ObserverNode<?> observer : observers) {
+        try {
+          observer.run();
+        } catch (RuntimeException | Error e) {
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      }
+      rethrow(failure);
+    }
+  }
+
+  /**
+   * Progress observer. Keeps only the latest reported value and has at most one delivery pending,
+   * which is delayed if the previous one was too recent.
+   */
+  private static final class ProgressNode implements Runnable {
+    /** Used to delay deliveries. */
+    private static final Handler TIMER = new Handler(Looper.getMainLooper());
+
+    /** Pending flag updater. */
+    private static final AtomicIntegerFieldUpdater<ProgressNode> PENDING =
+        AtomicIntegerFieldUpdater.newUpdater(ProgressNode.class, "pending");
+
+    /** Observed future. */
+    final AtomicFuture<?> future;
+    /** Where to notify. */
+    final Executor executor;
+    /** Minimum interval between notifications. */
+    final long minInterval;
+    /** Whom to notify. */
+    final ProgressObserver observer;
+    /** Next node. */
+    ProgressNode next;
+
+    /** Latest reported value. */
+    private volatile Object latest;
+    /** Whether a delivery is pending. */
+    private volatile int pending;
+    /** Time of the last delivery. */
+    private volatile long lastDelivery = Long.MIN_VALUE / 2;
+
+    /** Passes delayed delivery to the executor. */
+    private final Runnable dispatch = new Runnable() {
+      @Override
+      public void run() {
+        executor.execute(ProgressNode.this);
+      }
+    };
+
+    ProgressNode(final AtomicFuture<?> future, final Executor executor, final long minInterval,
+                 final ProgressObserver observer) {
+      this.future = future;
+      this.executor = executor;
+      this.minInterval = minInterval;
+      this.observer = observer;
+    }
+
+    void offer(final Object value) {
+      latest = value;
+      if (PENDING.compareAndSet(this, 0, 1)) {
+        long delay = lastDelivery + minInterval - SystemClock.uptimeMillis();
+        if (delay <= 0) {
+          executor.execute(this);
+        } else {
+          TIMER.postDelayed(dispatch, delay);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      lastDelivery = SystemClock.uptimeMillis();
+      // reset the flag before reading the value: newer values will schedule another delivery
+      pending = 0;
+      Object value = latest;
+      if (!future.isDone()) {
+        observer.onProgress(value);
+      }
+    }
+  }
+
+}
@@ -2,15 +2,18 @@ package com.stanfy.enroscar.goro;
 
 import android.util.Log;
 
-import java.util.ArrayList;
+import com.stanfy.enroscar.goro.PostponedCalls.Action;
+import com.stanfy.enroscar.goro.PostponedCalls.Node;
+import com.stanfy.enroscar.goro.PostponedCalls.QueuedAction;
+
+import java.io.PrintWriter;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import static com.stanfy.enroscar.goro.GoroFuture.IMMEDIATE;
+import static com.stanfy.enroscar.goro.AtomicFuture.IMMEDIATE;
 import static com.stanfy.enroscar.goro.Util.checkMainThread;
 
 /**
@@ -20,16 +23,23 @@ abstract class BufferedGoroDelegate extends Goro {
 
   private static final boolean DEBUG = false;
 
-  /** Delegate instance. */
-  private Goro delegate;
+  /** Number of buffer replays done without the lock before the delegate is published. */
+  private static final int MAX_UNLOCKED_REPLAYS = 4;
+
+  /**
+   * Delegate instance.
+   * Written under {@link #lock} and only after all the buffered calls are passed to the new delegate,
+   * so that a non-null value read without the lock can be used directly.
+   */
+  private volatile Goro delegate;
 
   /** Temporal array of listeners that must be added after getting service connection. */
   private final BaseListenersHandler scheduledListeners = new BaseListenersHandler(2);
 
-  /** Postponed data. */
-  private final ArrayList<Postponed> postponed = new ArrayList<>(7);
+  /** Postponed calls. Swapped for an empty buffer when replayed. */
+  private PostponedCalls postponed = new PostponedCalls();
 
-  /** Protects service instance. */
+  /** Protects postponed data and delegate updates. */
   private final Object lock = new Object();
 
   protected boolean updateDelegate(final Goro delegate) {
@@ -37,38 +47,53 @@ abstract class BufferedGoroDelegate extends Goro {
       if (DEBUG) {
         Log.v("Goro", "updateDelegate(" + delegate + ") " + this, new Throwable());
       }
-      if (this.delegate != delegate) {
-        if (this.delegate != null && delegate != null) {
-          throw new GoroException("Got a new delegate " + delegate
-              + " while being attached to another " + this.delegate);
-        }
-        this.delegate = delegate;
+      if (this.delegate == delegate) {
+        return false;
+      }
+      if (this.delegate != null && delegate != null) {
+        throw new GoroException("Got a new delegate " + delegate
+            + " while being attached to another " + this.delegate);
+      }
+      if (delegate == null) {
+        this.delegate = null;
+        return true;
+      }
+    }
 
-        if (this.delegate != null) {
-          // Delegate listeners.
-          if (!scheduledListeners.taskListeners.isEmpty()) {
-            for (GoroListener listener : scheduledListeners.taskListeners) {
-              delegate.addTaskListener(listener);
-            }
-            scheduledListeners.taskListeners.clear();
-          }
+    // Delegate listeners. Main thread => no sync.
+    if (!scheduledListeners.taskListeners.isEmpty()) {
+      for (GoroListener listener : scheduledListeners.taskListeners) {
+        delegate.addTaskListener(listener);
+      }
+      scheduledListeners.taskListeners.clear();
+    }
 
-          // Delegate tasks.
-          if (!postponed.isEmpty()) {
-            for (Postponed p : postponed) {
-              p.act(delegate);
-            }
-            postponed.clear();
-          }
+    // Delegate calls. The buffer is detached and replayed without the lock,
+    // calls made meanwhile go to a fresh buffer that is replayed on the next round.
+    for (int round = 0; round < MAX_UNLOCKED_REPLAYS; round++) {
+      PostponedCalls calls;
+      synchronized (lock) {
+        calls = postponed;
+        if (calls.isEmpty()) {
+          this.delegate = delegate;
+          return true;
         }
-
-        return true;
+        postponed = new PostponedCalls();
       }
-      return false;
+      calls.replayTo(delegate);
+    }
+
+    // Callers keep up with replaying: drain the rest holding the lock, so that they wait for the delegate.
+    synchronized (lock) {
+      PostponedCalls calls = postponed;
+      postponed = new PostponedCalls();
+      calls.replayTo(delegate);
+      this.delegate = delegate;
     }
+    return true;
   }
 
-  /** Use in tests only. */
+  /** @return current delegate, null if calls are buffered */
   final Goro delegate() {
     return delegate;
   }
@@ -93,12 +118,19 @@ abstract class BufferedGoroDelegate extends Goro {
     } else {
       if (!scheduledListeners.removeTaskListener(listener)) {
         // Delegate later.
-        postponed.add(new Postponed() {
-          @Override
-          public void act(final Goro goro) {
+        synchronized (lock) {
+          goro = delegate;
+          if (goro != null) {
             goro.removeTaskListener(listener);
+            return;
           }
-        });
+          postponed.addGlobal(new Action() {
+            @Override
+            public void act(final Goro goro) {
+              goro.removeTaskListener(listener);
+            }
+          });
+        }
       }
     }
   }
@@ -110,51 +142,179 @@ abstract class BufferedGoroDelegate extends Goro {
 
   @Override
   public <T> ObservableFuture<T> schedule(String queueName, Callable<T> task) {
+    Goro goro = delegate;
+    if (goro != null) {
+      return goro.schedule(queueName, task);
+    }
     synchronized (lock) {
-      if (delegate != null) {
-        return delegate.schedule(queueName, task);
+      goro = delegate;
+      if (goro != null) {
+        return goro.schedule(queueName, task);
       } else {
         BoundFuture<T> future = new BoundFuture<>(queueName, task);
-        postponed.add(future);
+        future.node = postponed.add(queueName, future);
         return future;
       }
     }
   }
 
   @Override
-  public Executor getExecutor(final String queueName) {
+  public final void post(final Runnable task) {
+    post(DEFAULT_QUEUE, task);
+  }
+
+  @Override
+  public void post(final String queueName, final Runnable task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task must not be null");
+    }
+    Goro goro = delegate;
+    if (goro != null) {
+      goro.post(queueName, task);
+      return;
+    }
+    synchronized (lock) {
+      goro = delegate;
+      if (goro != null) {
+        goro.post(queueName, task);
+      } else {
+        postponed.add(queueName, new PostAction(queueName, task));
+      }
+    }
+  }
+
+  @Override
+  public void setErrorHandler(final String queueName, final QueueErrorHandler handler) {
+    if (queueName == null) {
+      throw new IllegalArgumentException("Queue name must not be null");
+    }
+    Goro goro = delegate;
+    if (goro != null) {
+      goro.setErrorHandler(queueName, handler);
+      return;
+    }
     synchronized (lock) {
-      if (delegate != null) {
-        return delegate.getExecutor(queueName);
+      goro = delegate;
+      if (goro != null) {
+        goro.setErrorHandler(queueName, handler);
+      } else {
+        postponed.add(queueName, new Action() {
+          @Override
+          public void act(final Goro goro) {
+            goro.setErrorHandler(queueName, handler);
+          }
+        });
       }
-      return new PostponeExecutor(queueName);
     }
   }
 
+  @Override
+  public Executor getExecutor(final String queueName) {
+    Goro goro = delegate;
+    if (goro != null) {
+      return goro.getExecutor(queueName);
+    }
+    // postponing executor switches to the delegate itself when it's available
+    return new PostponeExecutor(queueName);
+  }
+
   @Override
   protected void removeTasksInQueue(final String queueName) {
+    Goro goro = delegate;
+    if (goro != null) {
+      goro.clear(queueName);
+      return;
+    }
     synchronized (lock) {
-      if (delegate != null) {
-        delegate.clear(queueName);
+      goro = delegate;
+      if (goro != null) {
+        goro.clear(queueName);
       } else {
-        postponed.add(new ClearAction(queueName));
+        postponed.add(queueName, new ClearAction(queueName));
       }
     }
   }
 
-  boolean cancelPostponed(final Postponed p) {
+  @Override
+  public void setMemoryPolicy(final MemoryPolicy policy) {
+    actOrPostpone(new Action() {
+      @Override
+      public void act(final Goro goro) {
+        goro.setMemoryPolicy(policy);
+      }
+    });
+  }
+
+  @Override
+  public void setCpuTimeTracking(final boolean enabled) {
+    actOrPostpone(new Action() {
+      @Override
+      public void act(final Goro goro) {
+        goro.setCpuTimeTracking(enabled);
+      }
+    });
+  }
+
+  @Override
+  public void setSlowTaskWatchdog(final SlowTaskWatchdog watchdog) {
+    actOrPostpone(new Action() {
+      @Override
+      public void act(final Goro goro) {
+        goro.setSlowTaskWatchdog(watchdog);
+      }
+    });
+  }
+
+  @Override
+  public void setTimelineRecorder(final TimelineRecorder recorder) {
+    actOrPostpone(new Action() {
+      @Override
+      public void act(final Goro goro) {
+        goro.setTimelineRecorder(recorder);
+      }
+    });
+  }
+
+  /** Pass a configuration call to the delegate or postpone it until the delegate is set. */
+  private void actOrPostpone(final Action action) {
+    Goro goro = delegate;
+    if (goro != null) {
+      action.act(goro);
+      return;
+    }
     synchronized (lock) {
-      return postponed.remove(p);
+      goro = delegate;
+      if (goro != null) {
+        action.act(goro);
+      } else {
+        postponed.addGlobal(action);
+      }
     }
   }
 
-  /** Some postponed action. */
-  private interface Postponed {
-    void act(Goro goro);
+  @Override
+  public GoroMetrics getMetrics() {
+    Goro goro = delegate;
+    return goro != null ? goro.getMetrics() : null;
+  }
+
+  @Override
+  public void dumpRecentEvents(final PrintWriter writer) {
+    Goro goro = delegate;
+    if (goro != null) {
+      goro.dumpRecentEvents(writer);
+    }
+  }
+
+  boolean cancelPostponed(final Node node) {
+    synchronized (lock) {
+      // false if the buffer is being replayed
+      return postponed.remove(node);
+    }
   }
 
   /** Postponed clear call. */
-  private static final class ClearAction implements Postponed {
+  private static final class ClearAction implements Action {
     /** Queue name. */
     private final String queueName;
 
@@ -169,7 +329,7 @@ abstract class BufferedGoroDelegate extends Goro {
   }
 
   /** Postponed action passed to an executor. */
-  private static final class ExecutorAction implements Postponed {
+  private static final class ExecutorAction implements Action {
     /** Queue name. */
     final String queue;
     /** Runnable action. */
@@ -186,6 +346,29 @@ abstract class BufferedGoroDelegate extends Goro {
     }
   }
 
+  /** Postponed post call. */
+  private static final class PostAction implements QueuedAction {
+    /** Queue name. */
+    final String queue;
+    /** Posted task. */
+    final Runnable task;
+
+    PostAction(final String queue, final Runnable task) {
+      this.queue = queue;
+      this.task = task;
+    }
+
+    @Override
+    public void act(final Goro goro) {
+      goro.post(queue, task);
+    }
+
+    @Override
+    public Runnable toTask(final GoroImpl goro) {
+      return task;
+    }
+  }
+
   /** Executor implementation. */
   private final class PostponeExecutor implements Executor {
 
@@ -198,32 +381,42 @@ abstract class BufferedGoroDelegate extends Goro {
 
     @Override
     public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+      Goro goro = delegate;
+      if (goro != null) {
+        goro.getExecutor(queueName).execute(command);
+        return;
+      }
       synchronized (lock) {
-        if (delegate != null) {
-          delegate.getExecutor(queueName).execute(command);
+        goro = delegate;
+        if (goro != null) {
+          goro.getExecutor(queueName).execute(command);
         } else {
-          postponed.add(new ExecutorAction(queueName, command));
+          // group by the queue the delegate executor would use
+          String queue = queueName == null ? DEFAULT_QUEUE : queueName;
+          postponed.add(queue, new ExecutorAction(queue, command));
         }
       }
     }
   }
 
-  /** Postponed scheduled future. */
-  private final class BoundFuture<T> implements ObservableFuture<T>, Postponed {
+  /**
+   * Postponed scheduled future.
+   * Stays {@link #NEW} while buffered, becomes {@link #RUNNING} when attached to a delegate future
+   * and mirrors its outcome. Observers subscribe to this future directly.
+   */
+  private final class BoundFuture<T> extends AtomicFuture<T>
+      implements QueuedAction, FutureObserver<T>, ProgressObserver {
 
     /** Queue name. */
     final String queue;
     /** Task instance. */
     final Callable<T> task;
 
-    /** Attached Goro future. */
-    private GoroFuture<T> goroFuture;
+    /** Attached Goro future. Written before the state becomes {@link #RUNNING}. */
+    private volatile ObservableFuture<T> goroFuture;
 
-    /** Cancel flag. */
-    private boolean canceled;
-
-    /** Observers list. */
-    private PendingObserversList pendingObservers;
+    /** Buffer node used to drop this future on cancellation. */
+    PostponedCalls.Node node;
 
     private BoundFuture(final String queue, final Callable<T> task) {
       this.queue = queue;
@@ -231,134 +424,80 @@ abstract class BufferedGoroDelegate extends Goro {
     }
 
     @Override
-    public synchronized void act(final Goro goro) {
-      goroFuture = (GoroFuture<T>) goro.schedule(queue, task);
-      if (pendingObservers != null) {
-        pendingObservers.execute();
-        pendingObservers = null;
+    public void act(final Goro goro) {
+      if (state() == NEW) {
+        attach(goro.schedule(queue, task));
       }
-      notifyAll();
     }
 
     @Override
-    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
-      if (goroFuture != null) {
-        return goroFuture.cancel(mayInterruptIfRunning);
-      }
-      if (!canceled) {
-        cancelPostponed(this);
-        pendingObservers = null;
-        canceled = true;
+    public Runnable toTask(final GoroImpl goro) {
+      if (state() != NEW) {
+        return null;
       }
-      notifyAll();
-      return true;
+      GoroFuture<T> future = goro.prepare(queue, task);
+      return attach(future) ? future : null;
     }
 
-    @Override
-    public synchronized boolean isCancelled() {
-      if (goroFuture != null) {
-        return goroFuture.isCancelled();
+    private boolean attach(final ObservableFuture<T> future) {
+      goroFuture = future;
+      if (!compareAndSetState(NEW, RUNNING)) {
+        // canceled meanwhile
+        future.cancel(false);
+        return false;
       }
-      return canceled;
+      future.subscribe(IMMEDIATE, this);
+      future.subscribeProgress(IMMEDIATE, 0, this);
+      return true;
     }
 
     @Override
-    public synchronized boolean isDone() {
-      return canceled || goroFuture != null && goroFuture.isDone();
+    public void onSuccess(final T value) {
+      set(RUNNING, value);
     }
 
     @Override
-    public synchronized T get() throws InterruptedException, ExecutionException {
-      // delegate
-      if (goroFuture != null) {
-        return goroFuture.get();
-      }
-      if (checkMainThread()) {
-        throw new GoroException("Blocking main thread here will lead to a deadlock");
-      }
-
-      if (canceled) {
-        throw new CancellationException("Task was canceled");
-      }
-
-      // wait for act() or cancel()
-      wait();
-
-      // either we got a delegate
-      if (goroFuture != null) {
-        return goroFuture.get();
-      }
-      // or we are canceled
-      if (canceled) {
-        throw new CancellationException("Task was canceled");
-      }
-
-      // wtf?
-      throw new IllegalStateException("get() is unblocked but there is neither result"
-          + " nor cancellation");
+    public void onError(final Throwable error) {
+      setException(RUNNING, error);
     }
 
     @Override
-    public synchronized T get(final long timeout, @SuppressWarnings("NullableProblems") final TimeUnit unit)
-        throws InterruptedException, ExecutionException, TimeoutException {
-      // delegate
-      if (goroFuture != null) {
-        return goroFuture.get(timeout, unit);
-      }
-      if (checkMainThread()) {
-        throw new GoroException("Blocking main thread here will lead to a deadlock");
-      }
-
-      if (canceled) {
-        throw new CancellationException("Task was canceled");
-      }
-
-      // wait for act() or cancel()
-      wait(unit.toMillis(timeout));
-
-      // either we got a delegate
-      if (goroFuture != null) {
-        return goroFuture.get();
-      }
-      // or we are canceled
-      if (canceled) {
-        throw new CancellationException("Task was canceled");
-      }
-
-      // otherwise it's a timeout
-      throw new TimeoutException();
+    public void onProgress(final Object progress) {
+      reportProgress(progress);
     }
 
     @Override
-    public synchronized void subscribe(final Executor executor, final FutureObserver<T> observer) {
-      if (goroFuture != null) {
-        goroFuture.subscribe(executor, observer);
-        return;
-      }
-      if (canceled) {
+    protected void done(final int finalState, final Object outcome) {
+      if (finalState < CANCELLED) {
         return;
       }
-
-      if (pendingObservers == null) {
-        pendingObservers = new PendingObserversList();
+      // canceled delegate does not notify observers, so cancellation goes the other way
+      ObservableFuture<T> future = goroFuture;
+      if (future == null) {
+        cancelPostponed(node);
+      } else {
+        future.cancel(finalState == INTERRUPTED);
       }
-      pendingObservers.add(new GoroFuture.ObserverRunnable<>(observer, null), executor);
     }
 
     @Override
-    public void subscribe(final FutureObserver<T> observer) {
-      subscribe(IMMEDIATE, observer);
+    public T get() throws InterruptedException, ExecutionException {
+      if (state() == NEW && checkMainThread()) {
+        throw new GoroException("Blocking main thread here will lead to a deadlock");
+      }
+      return super.get();
     }
 
-    /** List of pending observers. */
-    private final class PendingObserversList extends ExecutionObserversList {
-      @Override
-      protected void executeObserver(final Executor executor, final Runnable what) {
-        GoroFuture.ObserverRunnable runnable = (GoroFuture.ObserverRunnable) what;
-        runnable.future = goroFuture;
-        goroFuture.observers.add(what, executor);
+    @Override
+    public T get(final long timeout, @SuppressWarnings("NullableProblems") final TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      if (state() == NEW && checkMainThread()) {
+        throw new GoroException("Blocking main thread here will lead to a deadlock");
       }
+      // the deadline covers both waiting for a delegate and task execution
+      return super.get(timeout, unit);
     }
+
   }
 
 }
@@ -0,0 +1,156 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size ring of task events. Recording does not lock and does not allocate:
+ * event fields are kept in preallocated arrays, fields of a slot stored next to each other.
+ * A writer claims the next slot with an atomic increment and overwrites it using ordered stores only.
+ * Each slot has a stamp, which is {@link #WRITING} while the slot is written
+ * and the sequence number of its event plus one afterwards. Readers check the stamp
+ * before and after reading a slot and skip events written meanwhile.
+ * A slot is written by two threads at once only if the ring wraps during a single write,
+ * such an event may be torn.
+ */
+final class EventRing {
+
+  /** Stamp of a slot being written. */
+  private static final long WRITING = -1;
+
+  /** Positions of primitive fields in a slot. */
+  private static final int STAMP = 0, TIME = 1, VALUE1 = 2, VALUE2 = 3, KIND_AND_THREAD = 4, LONGS = 5;
+  /** Positions of reference fields in a slot. */
+  private static final int THREAD_NAME = 0, QUEUE = 1, TASK = 2, REFS = 3;
+
+  /** Id of the current thread, cached since {@link Process#myTid()} is a system call. */
+  private static final ThreadLocal<Integer> THREAD_ID = new ThreadLocal<Integer>() {
+    @Override
+    protected Integer initialValue() {
+      return Process.myTid();
+    }
+  };
+
+  /** Number of events written so far. */
+  private final AtomicLong next = new AtomicLong();
+
+  /** Stamps, times, values, kinds and thread ids of slots. The stamp is 0 while a slot is empty. */
+  private final AtomicLongArray longs;
+  /** Thread names, queue names and task classes of slots. */
+  private final AtomicReferenceArray<Object> refs;
+
+  /** Index mask. */
+  private final int mask;
+
+  /**
+   * @param capacity maximum number of events, rounded up to a power of two
+   */
+  EventRing(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    mask = size - 1;
+    longs = new AtomicLongArray(size * LONGS);
+    refs = new AtomicReferenceArray<>(size * REFS);
+  }
+
+  /** @return maximum number of events */
+  int capacity() {
+    return mask + 1;
+  }
+
+  /**
+   * Record an event of the current thread.
+   * @param kind event kind, defined by the caller
+   * @param queue queue name
+   * @param task task class
+   * @param time event time, as {@link System#nanoTime()}
+   * @param value1 event value, defined by the caller
+   * @param value2 event value, defined by the caller
+   */
+  void record(final int kind, final String queue, final Class<?> task, final long time,
+              final long value1, final long value2) {
+    long seq = next.getAndIncrement();
+    int slot = (int) seq & mask;
+    int l = slot * LONGS, r = slot * REFS;
+    // each ordered store is visible after the preceding ones, so readers see the mark first
+    longs.lazySet(l + STAMP, WRITING);
+    longs.lazySet(l + TIME, time);
+    longs.lazySet(l + VALUE1, value1);
+    longs.lazySet(l + VALUE2, value2);
+    longs.lazySet(l + KIND_AND_THREAD, (long) kind << 32 | THREAD_ID.get() & 0xFFFFFFFFL);
+    refs.lazySet(r + THREAD_NAME, Thread.currentThread().getName());
+    refs.lazySet(r + QUEUE, queue);
+    refs.lazySet(r + TASK, task);
+    longs.lazySet(l + STAMP, seq + 1);
+  }
+
+  /**
+   * Copy recorded events. Events overwritten, being written or not stored yet are skipped.
+   * @return events from the oldest one
+   */
+  List<Event> snapshot() {
+    long end = next.get();
+    long start = Math.max(0, end - capacity());
+    ArrayList<Event> result = new ArrayList<>((int) (end - start));
+    for (long seq = start; seq < end; seq++) {
+      int slot = (int) seq & mask;
+      int l = slot * LONGS, r = slot * REFS;
+      if (longs.get(l + STAMP) != seq + 1) {
+        continue;
+      }
+      long kindAndThread = longs.get(l + KIND_AND_THREAD);
+      Event event = new Event(seq, (int) (kindAndThread >>> 32), longs.get(l + TIME),
+          longs.get(l + VALUE1), longs.get(l + VALUE2), (int) kindAndThread,
+          (String) refs.get(r + THREAD_NAME), (String) refs.get(r + QUEUE), (Class<?>) refs.get(r + TASK));
+      // written meanwhile
+      if (longs.get(l + STAMP) == seq + 1) {
+        result.add(event);
+      }
+    }
+    return result;
+  }
+
+  /** Copy of a recorded event. */
+  static final class Event {
+    /** Sequence number. */
+    final long seq;
+    /** Event kind. */
+    final int kind;
+    /** Event time. */
+    final long time;
+    /** Event values. */
+    final long value1, value2;
+    /** Thread id. */
+    final int threadId;
+    /** Thread name. */
+    final String threadName;
+    /** Queue name. */
+    final String queue;
+    /** Task class. */
+    final Class<?> task;
+
+    Event(final long seq, final int kind, final long time, final long value1, final long value2,
+          final int threadId, final String threadName, final String queue, final Class<?> task) {
+      this.seq = seq;
+      this.kind = kind;
+      this.time = time;
+      this.value1 = value1;
+      this.value2 = value2;
+      this.threadId = threadId;
+      this.threadName = threadName;
+      this.queue = queue;
+      this.task = task;
+    }
+  }
+
+}
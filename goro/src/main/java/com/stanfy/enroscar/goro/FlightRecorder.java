@@ -0,0 +1,94 @@
+package com.stanfy.enroscar.goro;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Always-on record of recent task lifecycle events, used to describe what Goro was doing
+ * when something went wrong. Recording does not lock and does not allocate.
+ */
+final class FlightRecorder implements TaskTracker {
+
+  /** Default number of kept events. */
+  static final int DEFAULT_CAPACITY = 128;
+
+  /** Event kinds. */
+  private static final int ADDED = 1, STARTED = 2, FINISHED = 3, FAILED = 4, REMOVED = 5;
+
+  /** Recorded events. */
+  private final EventRing events;
+
+  FlightRecorder(final int capacity) {
+    this.events = new EventRing(capacity);
+  }
+
+  @Override
+  public void onAdded(final String queue, final int count) {
+    events.record(ADDED, queue, null, System.nanoTime(), count, 0);
+  }
+
+  @Override
+  public void onStarted(final String queue, final Runnable task, final long waitNanos) {
+    events.record(STARTED, queue, Util.taskClass(task), System.nanoTime(), waitNanos, 0);
+  }
+
+  @Override
+  public void onFinished(final String queue, final Runnable task, final long runNanos,
+                         final boolean failed) {
+    events.record(failed ? FAILED : FINISHED, queue, Util.taskClass(task), System.nanoTime(), runNanos, 0);
+  }
+
+  @Override
+  public void onRemoved(final String queue, final int count) {
+    events.record(REMOVED, queue, null, System.nanoTime(), count, 0);
+  }
+
+  /**
+   * Print recorded events from the oldest one, one per line.
+   * Event time is shown relatively to the moment of this call.
+   * @param writer output
+   */
+  void dump(final PrintWriter writer) {
+    long now = System.nanoTime();
+    List<EventRing.Event> events = this.events.snapshot();
+    if (events.isEmpty()) {
+      writer.println("  no events");
+      return;
+    }
+    for (EventRing.Event event : events) {
+      writer.print("  -");
+      writer.print(TimeUnit.NANOSECONDS.toMillis(now - event.time));
+      writer.print("ms [");
+      writer.print(event.threadName);
+      writer.print("] ");
+      writer.print(event.queue != null ? event.queue : "<no queue>");
+      switch (event.kind) {
+        case ADDED:
+          writer.print(" added ");
+          writer.print(event.value1);
+          break;
+        case REMOVED:
+          writer.print(" removed ");
+          writer.print(event.value1);
+          break;
+        case STARTED:
+          writer.print(" started ");
+          writer.print(event.task.getName());
+          writer.print(" after ");
+          writer.print(TimeUnit.NANOSECONDS.toMillis(event.value1));
+          writer.print("ms");
+          break;
+        default:
+          writer.print(event.kind == FAILED ? " failed " : " finished ");
+          writer.print(event.task.getName());
+          writer.print(" in ");
+          writer.print(TimeUnit.NANOSECONDS.toMillis(event.value1));
+          writer.print("ms");
+          break;
+      }
+      writer.println();
+    }
+  }
+
+}
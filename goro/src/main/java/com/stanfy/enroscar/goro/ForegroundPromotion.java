@@ -0,0 +1,126 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Describes when {@link GoroService} promotes itself to the foreground.
+ * The service is promoted when the number of pending tasks or their estimated duration
+ * crosses a threshold, and goes back to the background when there are no pending tasks.
+ * Estimated duration is the number of pending tasks multiplied by the average duration
+ * of finished tasks.
+ * <pre>
+ *   GoroService.setup(context, goro, null,
+ *       new ForegroundPromotion(NOTIFICATION_ID, factory).pendingTasks(20).estimatedMillis(10000));
+ * </pre>
+ * Only tasks of a Goro instance returned by {@link Goro#create()} or
+ * {@link Goro#createWithDelegate(java.util.concurrent.Executor)} are counted:
+ * if the service uses another implementation, it is never promoted.
+ * The backlog is polled only while the service is promoted or close to a threshold.
+ */
+public final class ForegroundPromotion {
+
+  /** Default interval between notification updates. */
+  private static final long DEFAULT_UPDATE_INTERVAL = 1000;
+
+  /** Notification id. */
+  final int notificationId;
+  /** Notification factory. */
+  final NotificationFactory factory;
+
+  /** Pending tasks threshold, 0 if not used. */
+  private int pendingTasks;
+  /** Estimated duration threshold, 0 if not used. */
+  private long estimatedMillis;
+  /** Minimal interval between notification updates. */
+  private long updateInterval = DEFAULT_UPDATE_INTERVAL;
+
+  /**
+   * @param notificationId id of the notification, must not be 0
+   * @param factory notification factory
+   */
+  public ForegroundPromotion(final int notificationId, final NotificationFactory factory) {
+    if (notificationId == 0) {
+      throw new IllegalArgumentException("Notification id must not be 0");
+    }
+    if (factory == null) {
+      throw new IllegalArgumentException("Notification factory must not be null");
+    }
+    this.notificationId = notificationId;
+    this.factory = factory;
+  }
+
+  /**
+   * Promote the service when there are at least the specified number of pending tasks.
+   * @param threshold number of tasks, 0 to ignore the number of tasks
+   * @return this instance
+   */
+  public ForegroundPromotion pendingTasks(final int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Threshold must not be negative");
+    }
+    this.pendingTasks = threshold;
+    return this;
+  }
+
+  /**
+   * Promote the service when pending tasks are estimated to take at least the specified time.
+   * @param threshold time in milliseconds, 0 to ignore the estimated duration
+   * @return this instance
+   */
+  public ForegroundPromotion estimatedMillis(final long threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("Threshold must not be negative");
+    }
+    this.estimatedMillis = threshold;
+    return this;
+  }
+
+  /**
+   * Set minimal interval between notification updates.
+   * @param millis interval in milliseconds
+   * @return this instance
+   */
+  public ForegroundPromotion updateInterval(final long millis) {
+    if (millis <= 0) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+    this.updateInterval = millis;
+    return this;
+  }
+
+  long getUpdateInterval() {
+    return updateInterval;
+  }
+
+  boolean shouldPromote(final int pending, final long estimated) {
+    return pendingTasks > 0 && pending >= pendingTasks
+        || estimatedMillis > 0 && estimated >= estimatedMillis;
+  }
+
+  /**
+   * @param averageMillis average task duration in milliseconds, 0 if unknown
+   * @return number of pending tasks that leads to promotion, {@link Integer#MAX_VALUE} if unknown
+   */
+  int promotionBacklog(final long averageMillis) {
+    long result = pendingTasks > 0 ? pendingTasks : Integer.MAX_VALUE;
+    if (estimatedMillis > 0 && averageMillis > 0) {
+      result = Math.min(result, (estimatedMillis + averageMillis - 1) / averageMillis);
+    }
+    return (int) result;
+  }
+
+  /**
+   * @param pending number of pending tasks
+   * @param averageMillis average task duration in milliseconds, 0 if unknown
+   * @return whether the backlog should be watched: it's at least a half of the promotion one,
+   *         or the duration threshold is used while the average duration is unknown
+   */
+  boolean isNear(final int pending, final long averageMillis) {
+    if (pending == 0) {
+      return false;
+    }
+    if (estimatedMillis > 0 && averageMillis == 0) {
+      return true;
+    }
+    return pending >= promotionBacklog(averageMillis) / 2;
+  }
+
+}
@@ -1,10 +1,18 @@
 package com.stanfy.enroscar.goro;
 
 import android.content.Context;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import static com.stanfy.enroscar.goro.BoundGoro.BoundGoroImpl;
 
@@ -16,6 +24,9 @@ public abstract class Goro {
   /** Default queue name. */
   public static final String DEFAULT_QUEUE = "default";
 
+  /** Default buffer size of task streams. */
+  public static final int DEFAULT_STREAM_BUFFER_SIZE = 16;
+
   /**
    * Gives access to Goro instance that is provided by a service.
    * @param binder Goro service binder
@@ -107,10 +118,26 @@ public abstract class Goro {
    * @return Goro implementation that binds to {@link GoroService}
    */
   public static Goro bindOnDemandWith(final Context context) {
+    return bindOnDemandWith(context, 0);
+  }
+
+  /**
+   * Creates a Goro implementation that binds to a worker service to schedule tasks.
+   * This implementation binds to the backing service when one of {@code Goro} methods is invoked
+   * and stays bound while calls keep coming. It unbinds after {@code lingerMillis} pass without calls.
+   * Calls made while bound are passed to the service directly.
+   * @param context context that will bind to the service
+   * @param lingerMillis how long to stay bound after the last call, 0 to unbind asap
+   * @return Goro implementation that binds to {@link GoroService}
+   */
+  public static OnDemandGoro bindOnDemandWith(final Context context, final long lingerMillis) {
     if (context == null) {
       throw new IllegalArgumentException("Context cannot be null");
     }
-    return new OnDemandBindingGoro(context);
+    if (lingerMillis < 0) {
+      throw new IllegalArgumentException("Linger period must not be negative");
+    }
+    return new OnDemandBindingGoro(context, lingerMillis);
   }
 
   /**
@@ -144,6 +171,117 @@ public abstract class Goro {
    */
   public abstract <T> ObservableFuture<T> schedule(final String queueName, final Callable<T> task);
 
+  /**
+   * Add a streaming task to the specified queue using a buffer of
+   * {@link #DEFAULT_STREAM_BUFFER_SIZE} values.
+   * @param queueName name of a queue to use, may be null
+   * @param task streaming task instance
+   * @return stream that delivers values produced by the task
+   * @see #stream(String, int, StreamingTask)
+   */
+  public final <T> TaskStream<T> stream(final String queueName, final StreamingTask<T> task) {
+    return stream(queueName, DEFAULT_STREAM_BUFFER_SIZE, task);
+  }
+
+  /**
+   * Add a streaming task to the specified queue.
+   * The task is scheduled as a regular task and occupies its queue until it returns.
+   * Produced values are kept in a buffer of a given size until the consumer requests them;
+   * when the buffer is full, the producer is suspended.
+   * @param queueName name of a queue to use, may be null
+   * @param bufferSize maximum number of values waiting for the consumer
+   * @param task streaming task instance
+   * @return stream that delivers values produced by the task
+   */
+  public final <T> TaskStream<T> stream(final String queueName, final int bufferSize,
+                                        final StreamingTask<T> task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task must not be null");
+    }
+    StreamChannel<T> channel = new StreamChannel<>(task, bufferSize);
+    channel.attach(schedule(queueName, channel));
+    return channel;
+  }
+
+  /** Error handlers used by the default {@link #post(String, Runnable)} implementation. */
+  private HashMap<String, QueueErrorHandler> errorHandlers;
+
+  /**
+   * Post a task to the default queue.
+   * @param task task instance
+   * @see #post(String, Runnable)
+   */
+  public void post(final Runnable task) {
+    post(DEFAULT_QUEUE, task);
+  }
+
+  /**
+   * Post a task to the specified queue.
+   * Unlike {@link #schedule(String, Callable)} this method does not create a future
+   * and does not notify task listeners, so it suits frequent fire-and-forget tasks.
+   * The task is still ordered with other tasks in the queue.
+   * Errors thrown by the task are passed to the queue error handler, if any.
+   * Queue name may be null, if you want to execute the task beyond any queue.
+   * <p>
+   * Default implementation wraps the task into {@link #schedule(String, Callable)},
+   * so it is neither cheaper nor hidden from listeners, and passes errors to the handler
+   * set with the default {@link #setErrorHandler(String, QueueErrorHandler)}.
+   * </p>
+   * @param queueName name of a queue to use, may be null
+   * @param task task instance
+   * @see #setErrorHandler(String, QueueErrorHandler)
+   */
+  public void post(final String queueName, final Runnable task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task must not be null");
+    }
+    schedule(queueName, Executors.callable(task)).subscribe(new FutureObserver<Object>() {
+      @Override
+      public void onSuccess(final Object value) {
+        // nothing
+      }
+
+      @Override
+      public void onError(final Throwable error) {
+        QueueErrorHandler handler;
+        synchronized (Goro.this) {
+          handler = errorHandlers != null ? errorHandlers.get(queueName) : null;
+        }
+        if (handler == null) {
+          // rethrown in the worker thread
+          AtomicFuture.rethrow(error);
+          throw new GoroException("Task " + task + " has failed", error);
+        }
+        handler.onError(queueName, task, error);
+      }
+    });
+  }
+
+  /**
+   * Set a handler for errors thrown by tasks posted to a queue
+   * with {@link #post(String, Runnable)} or {@link #getExecutor(String)}.
+   * Without a handler such errors are rethrown in the worker thread.
+   * Default implementation handles only errors of tasks passed to the default
+   * {@link #post(String, Runnable)} implementation.
+   * @param queueName queue name, must not be {@code null}
+   * @param handler error handler, {@code null} to remove the current one
+   */
+  public void setErrorHandler(final String queueName, final QueueErrorHandler handler) {
+    if (queueName == null) {
+      throw new IllegalArgumentException("Queue name must not be null");
+    }
+    synchronized (this) {
+      if (errorHandlers == null) {
+        errorHandlers = new HashMap<>();
+      }
+      if (handler == null) {
+        errorHandlers.remove(queueName);
+      } else {
+        errorHandlers.put(queueName, handler);
+      }
+    }
+  }
+
   /**
    * Returns an executor for performing tasks in a specified queue. If queue name is null,
    * {@link #DEFAULT_QUEUE} is used.
@@ -154,6 +292,7 @@ public abstract class Goro {
 
   /**
    * Removes all the pending tasks from a specified queue.
+   * Futures of removed tasks are cancelled.
    * @param queueName queue name, must not be {@code null}
    */
   public final void clear(final String queueName) {
@@ -165,6 +304,84 @@ public abstract class Goro {
 
   protected abstract void removeTasksInQueue(final String queueName);
 
+  /**
+   * Set a policy describing how to react to memory pressure.
+   * Instances returned from {@link #create()} and {@link #createWithDelegate(Executor)}
+   * use {@link MemoryPolicy#defaultPolicy()} initially.
+   * Bound instances pass the policy to the service instance once they are connected.
+   * Other implementations ignore the policy by default.
+   * @param policy memory policy, {@code null} to ignore memory pressure
+   */
+  public void setMemoryPolicy(final MemoryPolicy policy) {
+    // nothing by default
+  }
+
+  /**
+   * React to memory pressure. Should be called from
+   * {@link android.content.ComponentCallbacks2#onTrimMemory(int)}.
+   * {@link GoroService} does it for its own instance, so bound instances ignore this call.
+   * @param level trim memory level
+   */
+  public void trimMemory(final int level) {
+    // nothing by default
+  }
+
+  /**
+   * Enable measuring of thread CPU time spent by tasks, reported by {@link #getMetrics()}.
+   * Disabled by default: it costs two thread CPU clock reads per task.
+   * Supported by instances returned from {@link #create()} and {@link #createWithDelegate(Executor)}.
+   * Bound instances pass the setting to the service instance once they are connected.
+   * Other implementations ignore the setting by default.
+   * @param enabled whether CPU time should be measured
+   */
+  public void setCpuTimeTracking(final boolean enabled) {
+    // nothing by default
+  }
+
+  /**
+   * Set a watchdog that reports tasks running longer than their queue threshold.
+   * Supported by instances returned from {@link #create()} and {@link #createWithDelegate(Executor)}.
+   * Bound instances pass the watchdog to the service instance once they are connected.
+   * Other implementations ignore the watchdog by default.
+   * @param watchdog slow tasks watchdog, {@code null} to stop watching
+   */
+  public void setSlowTaskWatchdog(final SlowTaskWatchdog watchdog) {
+    // nothing by default
+  }
+
+  /**
+   * Set a recorder that keeps a timeline of recent tasks.
+   * Tasks running while the recorder is replaced may be recorded partially.
+   * Supported by instances returned from {@link #create()} and {@link #createWithDelegate(Executor)}.
+   * Bound instances pass the recorder to the service instance once they are connected.
+   * Other implementations ignore the recorder by default.
+   * @param recorder timeline recorder, {@code null} to stop recording
+   */
+  public void setTimelineRecorder(final TimelineRecorder recorder) {
+    // nothing by default
+  }
+
+  /**
+   * Print recent task lifecycle events: tasks added to queues, started, finished, failed and removed.
+   * A fixed number of events is always kept, so that they can be examined after a failure.
+   * Supported by instances returned from {@link #create()} and {@link #createWithDelegate(Executor)}
+   * and by bound instances once they are connected.
+   * @param writer output
+   */
+  public void dumpRecentEvents(final PrintWriter writer) {
+    // nothing by default
+  }
+
+  /**
+   * Take a snapshot of per-queue metrics: enqueued tasks, queue depth, wait and run time.
+   * Supported by instances returned from {@link #create()} and {@link #createWithDelegate(Executor)}
+   * and by bound instances once they are connected.
+   * @return metrics snapshot, null if metrics are not available
+   */
+  public GoroMetrics getMetrics() {
+    return null;
+  }
+
   /** Main implementation. */
   static class GoroImpl extends Goro {
     /** Listeners handler. */
@@ -173,12 +390,49 @@ public abstract class Goro {
     /** Queues. */
     private final Queues queues;
 
+    /** Tasks in flight. */
+    final TaskCounter taskCounter = new TaskCounter();
+
+    /** Per-queue metrics. */
+    final MetricsRecorder metrics = new MetricsRecorder();
+
+    /** Recent task events. */
+    final FlightRecorder flightRecorder = new FlightRecorder(FlightRecorder.DEFAULT_CAPACITY);
+
+    /** Trackers of tasks passing through the queues. */
+    final TrackerGroup trackers = new TrackerGroup(taskCounter, flightRecorder);
+
+    /** Memory policy, null if memory pressure is ignored. */
+    private volatile MemoryPolicy memoryPolicy = MemoryPolicy.defaultPolicy();
+
+    /** Posts lifting of memory restrictions. */
+    private final Handler resumeHandler = new Handler(Looper.getMainLooper());
+
+    /** Lifts memory restrictions after the policy timeout. */
+    private final Runnable resumeCheck = new Runnable() {
+      @Override
+      public void run() {
+        MemoryPolicy policy = memoryPolicy;
+        if (policy != null) {
+          queues.trimMemory(0, policy.deferrableQueues());
+          policy.recordResumed();
+        }
+      }
+    };
+
+    /** Slow tasks watchdog. Guarded by {@link #trackers}. */
+    private SlowTaskWatchdog watchdog;
+    /** Timeline recorder. Guarded by {@link #trackers}. */
+    private TimelineRecorder timeline;
+
     GoroImpl() {
       this(new Queues.Impl());
     }
 
     GoroImpl(final Queues queues) {
       this.queues = queues;
+      queues.setTaskTracker(trackers);
+      queues.setMetricsRecorder(metrics);
     }
 
     @Override
@@ -202,12 +456,141 @@ public abstract class Goro {
         throw new IllegalArgumentException("Task must not be null");
       }
 
-      GoroFuture<T> future = new GoroFuture<>(this, task);
+      GoroFuture<T> future = prepare(queueName, task);
+      try {
+        Executor executor = queues.getExecutor(queueName);
+        attachQueue(future, executor);
+        executor.execute(future);
+      } catch (QueueRejectedException e) {
+        countRejected();
+        future.setException(AtomicFuture.NEW, e);
+      }
+      return future;
+    }
+
+    /**
+     * Create a future for a task and notify listeners about scheduling.
+     * The future is not passed to the queue.
+     */
+    <T> GoroFuture<T> prepare(final String queueName, final Callable<T> task) {
+      GoroFuture<T> future = new GoroFuture<>(listenersHandler, task);
       listenersHandler.postSchedule(task, queueName);
-      queues.getExecutor(queueName).execute(future);
       return future;
     }
 
+    /**
+     * Schedule all the tasks of a batch, notifying listeners with a single event.
+     * Tasks of the same queue are added to it at once, keeping their order.
+     * @param batch tasks batch
+     * @return futures in the same order as tasks in the batch
+     */
+    ObservableFuture<?>[] schedule(final TaskBatch batch) {
+      int count = batch.size();
+      Callable<?>[] tasks = new Callable<?>[count];
+      String[] queueNames = new String[count];
+      ObservableFuture<?>[] futures = new ObservableFuture<?>[count];
+      LinkedHashMap<String, ArrayList<Runnable>> groups = new LinkedHashMap<>();
+      for (int i = 0; i < count; i++) {
+        tasks[i] = batch.task(i);
+        queueNames[i] = batch.queue(i);
+        GoroFuture<?> future = newFuture(tasks[i]);
+        futures[i] = future;
+        ArrayList<Runnable> group = groups.get(queueNames[i]);
+        if (group == null) {
+          group = new ArrayList<>();
+          groups.put(queueNames[i], group);
+        }
+        group.add(future);
+      }
+
+      listenersHandler.postScheduleBatch(tasks, queueNames);
+      for (Map.Entry<String, ArrayList<Runnable>> group : groups.entrySet()) {
+        ArrayList<Runnable> groupTasks = group.getValue();
+        Runnable[] groupArray = groupTasks.toArray(new Runnable[groupTasks.size()]);
+        try {
+          enqueue(group.getKey(), groupArray, groupArray.length, true);
+        } catch (QueueRejectedException e) {
+          // same as schedule(): the whole group is rejected
+          for (Runnable future : groupArray) {
+            countRejected();
+            ((GoroFuture<?>) future).setException(AtomicFuture.NEW, e);
+          }
+        }
+      }
+      return futures;
+    }
+
+    private <T> GoroFuture<T> newFuture(final Callable<T> task) {
+      return new GoroFuture<>(listenersHandler, task);
+    }
+
+    /**
+     * Add several tasks to a queue at once.
+     * Used to replay buffered calls, which are not rejected by memory restrictions.
+     * @param queueName queue name
+     * @param tasks tasks array
+     * @param count number of tasks to take from the array
+     */
+    void enqueue(final String queueName, final Runnable[] tasks, final int count) {
+      enqueue(queueName, tasks, count, false);
+    }
+
+    private void enqueue(final String queueName, final Runnable[] tasks, final int count,
+                         final boolean rejectable) {
+      Executor executor = queues.getExecutor(queueName);
+      for (int i = 0; i < count; i++) {
+        if (tasks[i] instanceof GoroFuture) {
+          attachQueue((GoroFuture<?>) tasks[i], executor);
+        }
+      }
+      if (executor instanceof Queues.TaskQueueExecutor) {
+        ((Queues.TaskQueueExecutor) executor).executeAll(tasks, count, rejectable);
+      } else {
+        for (int i = 0; i < count; i++) {
+          executor.execute(tasks[i]);
+        }
+      }
+    }
+
+    private static void attachQueue(final GoroFuture<?> future, final Executor executor) {
+      if (executor instanceof Queues.TaskQueueExecutor) {
+        future.queue = (Queues.TaskQueueExecutor) executor;
+      }
+    }
+
+    @Override
+    public void post(final Runnable task) {
+      post(DEFAULT_QUEUE, task);
+    }
+
+    @Override
+    public void post(final String queueName, final Runnable task) {
+      if (task == null) {
+        throw new IllegalArgumentException("Task must not be null");
+      }
+      try {
+        queues.getExecutor(queueName).execute(task);
+      } catch (QueueRejectedException e) {
+        countRejected();
+        throw e;
+      }
+    }
+
+    private void countRejected() {
+      MemoryPolicy policy = memoryPolicy;
+      if (policy != null) {
+        policy.recordRejected();
+      }
+    }
+
+    @Override
+    public void setErrorHandler(final String queueName, final QueueErrorHandler handler) {
+      if (queueName == null) {
+        throw new IllegalArgumentException("Queue name must not be null");
+      }
+      queues.setErrorHandler(queueName, handler);
+    }
+
     @Override
     public Executor getExecutor(final String queueName) {
       return queues.getExecutor(queueName == null ? DEFAULT_QUEUE : queueName);
@@ -217,6 +600,81 @@ public abstract class Goro {
     protected void removeTasksInQueue(final String queueName) {
       queues.clear(queueName);
     }
+
+    @Override
+    public GoroMetrics getMetrics() {
+      return metrics.snapshot(queues);
+    }
+
+    @Override
+    public void setMemoryPolicy(final MemoryPolicy policy) {
+      memoryPolicy = policy;
+      if (policy == null) {
+        // revert restrictions
+        resumeHandler.removeCallbacks(resumeCheck);
+        queues.trimMemory(0, new String[0]);
+      }
+    }
+
+    @Override
+    public void dumpRecentEvents(final PrintWriter writer) {
+      flightRecorder.dump(writer);
+    }
+
+    @Override
+    public void setCpuTimeTracking(final boolean enabled) {
+      metrics.cpuTimeTracking = enabled;
+    }
+
+    @Override
+    public void setSlowTaskWatchdog(final SlowTaskWatchdog watchdog) {
+      synchronized (trackers) {
+        if (this.watchdog == watchdog) {
+          return;
+        }
+        if (watchdog != null) {
+          watchdog.start();
+          trackers.add(watchdog.tracker);
+        }
+        if (this.watchdog != null) {
+          trackers.remove(this.watchdog.tracker);
+          this.watchdog.stop();
+        }
+        this.watchdog = watchdog;
+      }
+    }
+
+    @Override
+    public void setTimelineRecorder(final TimelineRecorder recorder) {
+      synchronized (trackers) {
+        if (timeline != null) {
+          trackers.remove(timeline.tracker);
+        }
+        if (recorder != null) {
+          trackers.add(recorder.tracker);
+        }
+        timeline = recorder;
+      }
+    }
+
+    @Override
+    public void trimMemory(final int level) {
+      MemoryPolicy policy = memoryPolicy;
+      if (policy == null) {
+        return;
+      }
+      int actions = policy.actionsFor(level);
+      int evicted = queues.trimMemory(actions, policy.deferrableQueues());
+      policy.recordTrim(level, actions);
+      policy.recordEvicted(evicted);
+
+      // restart the timeout with each trim call
+      resumeHandler.removeCallbacks(resumeCheck);
+      long timeout = policy.getResumeTimeout();
+      if ((actions & MemoryPolicy.STATEFUL_ACTIONS) != 0 && timeout > 0) {
+        resumeHandler.postDelayed(resumeCheck, timeout);
+      }
+    }
   }
 
 }
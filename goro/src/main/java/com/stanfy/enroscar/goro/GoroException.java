@@ -8,12 +8,30 @@ package com.stanfy.enroscar.goro;
  */
 public class GoroException extends RuntimeException {
 
+  /** Recent task events, null if not recorded. */
+  private final String recentEvents;
+
   public GoroException(final String message) {
     super(message);
+    this.recentEvents = null;
   }
 
   public GoroException(final String message, final Throwable cause) {
     super(message, cause);
+    this.recentEvents = null;
+  }
+
+  GoroException(final String message, final Throwable cause, final String recentEvents) {
+    super(message + "\nRecent Goro events:\n" + recentEvents, cause);
+    this.recentEvents = recentEvents;
+  }
+
+  /**
+   * @return recent task lifecycle events printed when this exception was thrown, null if not recorded
+   * @see Goro#dumpRecentEvents(java.io.PrintWriter)
+   */
+  public String getRecentEvents() {
+    return recentEvents;
   }
 
 }
@@ -1,138 +1,117 @@
 package com.stanfy.enroscar.goro;
 
-import com.stanfy.enroscar.goro.Goro.GoroImpl;
-
-import java.lang.ref.WeakReference;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.FutureTask;
 
 /**
- * Future implementation.
+ * Future implementation that runs a task scheduled in Goro.
  */
-final class GoroFuture<T> extends FutureTask<T> implements ObservableFuture<T> {
-
-  /** Immediate executor. */
-  static final Executor IMMEDIATE = new Executor() {
-    @Override
-    public void execute(final @SuppressWarnings("NullableProblems") Runnable command) {
-      command.run();
-    }
-  };
+final class GoroFuture<T> extends AtomicFuture<T> implements Runnable, ProgressReporter {
 
-  /** Observers list. */
-  final ExecutionObserversList observers = new ExecutionObserversList();
+  /** Listeners handler. Released when the task is done. */
+  private ListenersHandler listenersHandler;
 
-  /** Weak reference to Goro. */
-  private final WeakReference<GoroImpl> goroRef;
-
-  /** Task. */
+  /** Task. Released when the task is done. */
   private Callable<T> task;
 
-  GoroFuture(final GoroImpl goro, final Callable<T> task) {
-    super(task);
-    this.task = task;
-    this.goroRef = new WeakReference<>(goro);
-  }
-
-  @Override
-  public void run() {
-    GoroImpl goro = goroRef.get();
-    Callable<?> task = this.task;
+  /** Task class. Kept after the task is released. */
+  private final Class<?> taskClass;
 
-    // if task is null, it's already canceled
+  /** Thread running the task. */
+  private volatile Thread runner;
 
-    // invoke onTaskStart
-    if (goro != null && task != null && !isDone()) {
-      goro.listenersHandler.postStart(task);
-    }
+  /** Queue this future is added to. Used to drop the future from the queue on cancellation. */
+  volatile Queues.TaskQueueExecutor queue;
 
-    super.run();
+  GoroFuture(final ListenersHandler listenersHandler, final Callable<T> task) {
+    this.listenersHandler = listenersHandler;
+    this.task = task;
+    this.taskClass = task.getClass();
   }
 
+  /** @return task class */
+  Class<?> taskClass() {
+    return taskClass;
+  }
 
   @Override
-  protected void done() {
-    GoroImpl goro = goroRef.get();
-    if (goro == null) {
+  public void run() {
+    if (state() != NEW) {
+      return;
+    }
+    // read before the state changes: concurrent cancellation releases these references
+    Callable<T> task = this.task;
+    ListenersHandler listenersHandler = this.listenersHandler;
+    runner = Thread.currentThread();
+    if (!compareAndSetState(NEW, RUNNING)) {
+      runner = null;
       return;
     }
 
+    // invoke onTaskStart
+    listenersHandler.postStart(task);
+    if (task instanceof ProgressAware) {
+      ((ProgressAware) task).injectProgressReporter(this);
+    }
+
     try {
-      Object result = get();
-      // invoke onTaskFinish
-      goro.listenersHandler.postFinish(task, result);
-    } catch (CancellationException e) {
-      // invoke onTaskCancel
-      goro.listenersHandler.postCancel(task);
-    } catch (ExecutionException e) {
-      // invoke onTaskError
-      goro.listenersHandler.postError(task, e.getCause());
-    } catch (InterruptedException e) {
-      throw new RuntimeException(e);
+      T result;
+      try {
+        result = task.call();
+      } catch (Throwable e) {
+        setException(RUNNING, e);
+        return;
+      }
+      set(RUNNING, result);
     } finally {
-      task = null;
-      observers.execute();
+      runner = null;
+      // wait for a possible interruption caused by cancel(true) to happen here, not in the next task
+      while (state() == INTERRUPTING) {
+        Thread.yield();
+      }
     }
-
   }
 
   @Override
-  public void subscribe(final Executor executor, final FutureObserver<T> observer) {
-    observers.add(new ObserverRunnable<>(observer, this), executor);
+  public void report(final Object progress) {
+    if (state() == RUNNING) {
+      reportProgress(progress);
+    }
   }
 
   @Override
-  public void subscribe(final FutureObserver<T> observer) {
-    subscribe(IMMEDIATE, observer);
-  }
-
-  /**
-   * What can be added to the observers list.
-   * @param <T> future data type
-   */
-  static final class ObserverRunnable<T> implements Runnable {
-
-    /** Observer reference. */
-    private final FutureObserver<T> observer;
-
-    /** Future instance. */
-    GoroFuture<T> future;
-
-    ObserverRunnable(final FutureObserver<T> observer, final GoroFuture<T> future) {
-      this.observer = observer;
-      this.future = future;
+  protected void interruptTask() {
+    Thread t = runner;
+    if (t != null) {
+      t.interrupt();
     }
+  }
 
-    @Override
-    public void run() {
-      T value = null;
-      Throwable error = null;
-      boolean cancelled = false;
-
-      try {
-        value = future.get();
-      } catch (InterruptedException e) {
-        throw new RuntimeException(e);
-      } catch (CancellationException e) {
-        cancelled = true;
-      } catch (ExecutionException e) {
-        error = e.getCause();
-      } finally {
-        future = null;
-      }
-
-      if (cancelled) {
-        return;
-      }
-
-      if (error != null) {
-        observer.onError(error);
-      } else {
-        observer.onSuccess(value);
-      }
+  @Override
+  protected void done(final int finalState, final Object outcome) {
+    ListenersHandler listenersHandler = this.listenersHandler;
+    Callable<T> task = this.task;
+    this.listenersHandler = null;
+    this.task = null;
+    Queues.TaskQueueExecutor queue = this.queue;
+    this.queue = null;
+
+    switch (finalState) {
+      case SUCCESS:
+        // invoke onTaskFinish
+        listenersHandler.postFinish(task, outcome);
+        break;
+      case FAILURE:
+        // invoke onTaskError
+        listenersHandler.postError(task, (Throwable) outcome);
+        break;
+      default:
+        // do not occupy a queue slot till the future is polled
+        if (queue != null) {
+          queue.remove(this);
+        }
+        // invoke onTaskCancel
+        listenersHandler.postCancel(task);
+        break;
     }
   }
 
@@ -0,0 +1,73 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of Goro metrics. Taking a snapshot does not block workers.
+ * @see Goro#getMetrics()
+ */
+public final class GoroMetrics {
+
+  /** Snapshot time. */
+  private final long time;
+  /** Number of tasks being run. */
+  private final int activeThreads;
+  /** Threads pool size. */
+  private final int poolSize;
+  /** Metrics by queue name. */
+  private final Map<String, QueueMetrics> queues;
+  /** Metrics of tasks beyond any queue. */
+  private final QueueMetrics direct;
+
+  GoroMetrics(final long time, final int activeThreads, final int poolSize,
+              final Map<String, QueueMetrics> queues, final QueueMetrics direct) {
+    this.time = time;
+    this.activeThreads = activeThreads;
+    this.poolSize = poolSize;
+    this.queues = Collections.unmodifiableMap(queues);
+    this.direct = direct;
+  }
+
+  /** @return snapshot time, as {@link android.os.SystemClock#uptimeMillis()} */
+  public long getTime() {
+    return time;
+  }
+
+  /** @return number of pool threads running Goro tasks */
+  public int getActiveThreads() {
+    return activeThreads;
+  }
+
+  /** @return number of threads in the pool, -1 if the pool is not a {@link java.util.concurrent.ThreadPoolExecutor} */
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  /** @return number of pool threads that do not run Goro tasks, -1 if the pool size is unknown */
+  public int getIdleThreads() {
+    return poolSize < 0 ? -1 : Math.max(0, poolSize - activeThreads);
+  }
+
+  /** @return metrics by queue name */
+  public Map<String, QueueMetrics> getQueues() {
+    return queues;
+  }
+
+  /**
+   * Tasks beyond any queue run in parallel, so their metrics have no active task and no pending age.
+   * @return metrics of tasks scheduled without a queue name, named {@code null}
+   */
+  public QueueMetrics getDirectTasks() {
+    return direct;
+  }
+
+  /**
+   * @param queueName queue name
+   * @return metrics of a queue, null if the queue has not been used or was evicted under memory pressure
+   */
+  public QueueMetrics getQueue(final String queueName) {
+    return queues.get(queueName);
+  }
+
+}
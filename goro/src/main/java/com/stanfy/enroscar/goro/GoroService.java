@@ -1,12 +1,15 @@
 package com.stanfy.enroscar.goro;
 
+import android.annotation.SuppressLint;
 import android.app.Notification;
+import android.app.NotificationManager;
 import android.app.Service;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.Binder;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
@@ -14,9 +17,21 @@ import android.os.Message;
 import android.os.Parcelable;
 import android.util.Log;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
 import static android.content.pm.PackageManager.COMPONENT_ENABLED_STATE_ENABLED;
 import static android.content.pm.PackageManager.DONT_KILL_APP;
 
@@ -72,13 +87,37 @@ public class GoroService extends Service {
    */
   static final String EXTRA_NOTIFICATION_BUNDLE = "notification_bundle";
 
+  /**
+   * Used as a byte array field in service command intent to pass
+   * several tasks marshalled by {@link TaskBatch}.
+   */
+  static final String EXTRA_TASK_BATCH = "task_batch";
+
+  /**
+   * Used as a byte array field in service command intent to pass
+   * a task encoded with {@link TaskCodecs}.
+   */
+  static final String EXTRA_ENCODED_TASK = "encoded_task";
+
 
   /** Goro instance used by the service. */
   private static Goro goro;
 
+  /** Task codecs. */
+  private static volatile TaskCodecs codecs;
+
+  /** Foreground promotion settings. */
+  private static volatile ForegroundPromotion promotion;
+
   /** Errors thrower. */
   private static final ErrorThrow ERROR_THROWER = new ErrorThrow();
 
+  /** Ingestion thread keep alive time in seconds. */
+  private static final int INGESTION_KEEP_ALIVE = 7;
+
+  /** Shared ingestion executor. */
+  private static Executor defaultIngestionExecutor;
+
 
   /** Bound users flag. */
   boolean hasBoundUsers;
@@ -89,12 +128,54 @@ public class GoroService extends Service {
   /** Stop handler. */
   private final StopHandler stopHandler = new StopHandler(this);
 
+  /** Decodes and schedules tasks from command intents. */
+  Executor ingestionExecutor;
+
+  /** Command intents waiting for ingestion. */
+  private final AtomicInteger pendingIntents = new AtomicInteger();
+
+  /** Whether the service is in the foreground because of a notification passed in an intent. */
+  private boolean explicitForeground;
+  /** Whether the service has promoted itself to the foreground. */
+  boolean promoted;
+  /** Number of finished tasks at the moment of promotion. */
+  private long finishedAtPromotion;
+  /** Number of pending tasks shown in the last notification. */
+  private int notifiedPending;
+
   /***
    * Initialize GoroService which will allow you to use {@code Goro.bindXXX} methods.
    * @param context context instance used to enable GoroService component
    * @param goro instance of Goro that should be used by the service
    */
   public static void setup(final Context context, final Goro goro) {
+    setup(context, goro, null);
+  }
+
+  /***
+   * Initialize GoroService which will allow you to use {@code Goro.bindXXX} methods
+   * and pass tasks encoded with registered codecs.
+   * @param context context instance used to enable GoroService component
+   * @param goro instance of Goro that should be used by the service
+   * @param codecs task codecs used by {@link #encodedTaskIntent(Context, String, Callable)}, may be null
+   */
+  public static void setup(final Context context, final Goro goro, final TaskCodecs codecs) {
+    setup(context, goro, codecs, null);
+  }
+
+  /***
+   * Initialize GoroService which will allow you to use {@code Goro.bindXXX} methods,
+   * pass tasks encoded with registered codecs and let the service promote itself
+   * to the foreground when it has a large backlog.
+   * @param context context instance used to enable GoroService component
+   * @param goro instance of Goro that should be used by the service
+   * @param codecs task codecs used by {@link #encodedTaskIntent(Context, String, Callable)}, may be null
+   * @param promotion foreground promotion settings, may be null;
+   *                  used only if {@code goro} is created with {@link Goro#create()}
+   *                  or {@link Goro#createWithDelegate(java.util.concurrent.Executor)}
+   */
+  public static void setup(final Context context, final Goro goro, final TaskCodecs codecs,
+                           final ForegroundPromotion promotion) {
     if (goro == null) {
       throw new IllegalArgumentException("Goro instance cannot be null");
     }
@@ -102,6 +183,8 @@ public class GoroService extends Service {
       throw new IllegalStateException("GoroService.setup must be called on the main thread");
     }
     GoroService.goro = goro;
+    GoroService.codecs = codecs;
+    GoroService.promotion = promotion;
     context.getPackageManager().setComponentEnabledSetting(
         new ComponentName(context, GoroService.class),
         COMPONENT_ENABLED_STATE_ENABLED,
@@ -199,6 +282,55 @@ public class GoroService extends Service {
     return taskIntent(context, Goro.DEFAULT_QUEUE, task);
   }
 
+  /**
+   * Create an intent that contains several tasks, possibly for different queues.
+   * Tasks are scheduled at once, listeners get a single message for all of them.
+   * Intent can be used as an argument for
+   * {@link android.content.Context#startService(android.content.Intent)}.
+   *
+   * @param context context instance
+   * @param batch tasks to schedule
+   */
+  public static Intent taskIntent(final Context context, final TaskBatch batch) {
+    if (batch == null || batch.size() == 0) {
+      throw new IllegalArgumentException("Batch must contain tasks");
+    }
+    return new Intent(context, GoroService.class)
+        .putExtra(EXTRA_TASK_BATCH, batch.marshall());
+  }
+
+  /**
+   * Create an intent that contains a task encoded with a codec registered
+   * in {@link #setup(Context, Goro, TaskCodecs)}.
+   * The task is passed as a type id and fields written by the codec, without class names
+   * and {@code Bundle} wrappers.
+   * Intent can be used as an argument for
+   * {@link android.content.Context#startService(android.content.Intent)}.
+   *
+   * @param context context instance
+   * @param queueName queue name
+   * @param task task instance
+   */
+  public static Intent encodedTaskIntent(final Context context, final String queueName,
+                                         final Callable<?> task) {
+    TaskCodecs codecs = GoroService.codecs;
+    if (codecs == null) {
+      throw new IllegalStateException("Task codecs are not set up. Call GoroService.setup");
+    }
+    return new Intent(context, GoroService.class)
+        .putExtra(EXTRA_ENCODED_TASK, codecs.encode(task))
+        .putExtra(EXTRA_QUEUE_NAME, queueName);
+  }
+
+  /**
+   * Create an intent that contains a task encoded with a registered codec
+   * that should be scheduled on a default queue.
+   * @see #encodedTaskIntent(Context, String, Callable)
+   */
+  public static Intent encodedTaskIntent(final Context context, final Callable<?> task) {
+    return encodedTaskIntent(context, Goro.DEFAULT_QUEUE, task);
+  }
+
   /**
    * Bind to Goro service. This method will start the service and then bind to it.
    * @param context context that is binding to the service
@@ -267,6 +399,31 @@ public class GoroService extends Service {
     return binder;
   }
 
+  /**
+   * Single worker thread with an unbounded backlog, so that intents are handled in order
+   * and the main thread never waits.
+   */
+  @SuppressLint("NewApi")
+  private static synchronized Executor getDefaultIngestionExecutor() {
+    if (defaultIngestionExecutor == null) {
+      //noinspection NullableProblems
+      ThreadFactory tFactory = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+          return new Thread(r, "Goro Ingestion");
+        }
+      };
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+          INGESTION_KEEP_ALIVE, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), tFactory);
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+        executor.allowCoreThreadTimeOut(true);
+      }
+      defaultIngestionExecutor = executor;
+    }
+    return defaultIngestionExecutor;
+  }
+
   private void injectContext(final Callable<?> task) {
     if (task instanceof ServiceContextAware) {
       ((ServiceContextAware) task).injectServiceContext(this);
@@ -277,31 +434,132 @@ public class GoroService extends Service {
   @Override
   public int onStartCommand(final Intent intent, final int flags, final int startId) {
     if (intent != null) {
-      Callable<?> task = getTaskFromExtras(intent);
-      if (task != null) {
-        injectContext(task);
-        String queueName = intent.hasExtra(EXTRA_QUEUE_NAME)
-            ? intent.getStringExtra(EXTRA_QUEUE_NAME)
-            : Goro.DEFAULT_QUEUE;
-
-        ObservableFuture<?> future = getBinder().goro.schedule(queueName, task);
-        if (!intent.getBooleanExtra(EXTRA_IGNORE_ERROR, false)) {
-          ensureErrorWillBeThrown(future);
+      startForegroundIfRequested(intent);
+      ingest(intent);
+    }
+    return START_STICKY;
+  }
+
+  /**
+   * Enter the foreground right away: a service started with {@code startForegroundService()}
+   * must do it within a few seconds, the ingestion backlog may take longer.
+   * Tasks are packed into their own bundles, so they are not unparcelled here.
+   */
+  private void startForegroundIfRequested(final Intent intent) {
+    try {
+      Bundle bundle = intent.getBundleExtra(EXTRA_NOTIFICATION_BUNDLE);
+      if (bundle != null) {
+        Notification notification = bundle.getParcelable(EXTRA_NOTIFICATION);
+        if (notification != null) {
+          startExplicitForeground(intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0), notification);
         }
       }
+    } catch (RuntimeException e) {
+      // a malformed intent must not crash the service
+      Log.e(TAG, "Cannot read notification from " + intent, e);
+    }
+  }
 
-      if (intent.hasExtra(EXTRA_NOTIFICATION_BUNDLE)) {
-        Bundle bundle = intent.getBundleExtra(EXTRA_NOTIFICATION_BUNDLE);
-        if (bundle != null) {
-          Notification notification = bundle.getParcelable(EXTRA_NOTIFICATION);
-          int notificationId = intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0);
-          if (notification != null) {
-            startForeground(notificationId, notification);
+  private void ingest(final Intent intent) {
+    // task extras are read on the ingestion thread
+    final GoroBinderImpl binder = getBinder();
+    if (ingestionExecutor == null) {
+      ingestionExecutor = getDefaultIngestionExecutor();
+    }
+    pendingIntents.incrementAndGet();
+    stopHandler.doNotStop();
+    ingestionExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          handleIntent(binder.goro, intent);
+        } catch (RuntimeException e) {
+          // a malformed intent must not stop the ingestion thread
+          Log.e(TAG, "Cannot handle " + intent, e);
+        } finally {
+          if (pendingIntents.decrementAndGet() == 0) {
+            stopHandler.checkForStop();
           }
         }
       }
+    });
+  }
+
+  /** Invoked on the ingestion thread. */
+  private void handleIntent(final Goro goro, final Intent intent) {
+    if (intent.hasExtra(EXTRA_TASK) || intent.hasExtra(EXTRA_TASK_BUNDLE)
+        || intent.hasExtra(EXTRA_TASK_BATCH) || intent.hasExtra(EXTRA_ENCODED_TASK)) {
+      scheduleTask(goro, intent);
+    }
+  }
+
+  /** Invoked on the main thread. */
+  void startExplicitForeground(final int notificationId, final Notification notification) {
+    startForeground(notificationId, notification);
+    explicitForeground = true;
+    promoted = false;
+  }
+
+  /** Leave the foreground entered because of an intent when there are no more tasks. Invoked on the main thread. */
+  void stopExplicitForeground() {
+    if (explicitForeground) {
+      explicitForeground = false;
+      stopForeground(true);
+    }
+  }
+
+  private void scheduleTask(final Goro goro, final Intent intent) {
+    if (intent.hasExtra(EXTRA_TASK_BATCH)) {
+      scheduleBatch(goro, intent);
+      return;
+    }
+
+    Callable<?> task = intent.hasExtra(EXTRA_ENCODED_TASK)
+        ? decodeTask(intent.getByteArrayExtra(EXTRA_ENCODED_TASK))
+        : getTaskFromExtras(intent);
+    if (task != null) {
+      injectContext(task);
+      String queueName = intent.hasExtra(EXTRA_QUEUE_NAME)
+          ? intent.getStringExtra(EXTRA_QUEUE_NAME)
+          : Goro.DEFAULT_QUEUE;
+
+      ObservableFuture<?> future = goro.schedule(queueName, task);
+      if (!intent.getBooleanExtra(EXTRA_IGNORE_ERROR, false)) {
+        ensureErrorWillBeThrown(future);
+      }
+    }
+  }
+
+  private static Callable<?> decodeTask(final byte[] data) {
+    TaskCodecs codecs = GoroService.codecs;
+    if (codecs == null) {
+      throw new GoroException("Got an encoded task but codecs are not set up");
+    }
+    return codecs.decode(data);
+  }
+
+  private void scheduleBatch(final Goro goro, final Intent intent) {
+    TaskBatch batch = TaskBatch.unmarshall(intent.getByteArrayExtra(EXTRA_TASK_BATCH), getClassLoader());
+    int count = batch.size();
+    for (int i = 0; i < count; i++) {
+      injectContext(batch.task(i));
+    }
+
+    ObservableFuture<?>[] futures;
+    if (goro instanceof Goro.GoroImpl) {
+      futures = ((Goro.GoroImpl) goro).schedule(batch);
+    } else {
+      futures = new ObservableFuture<?>[count];
+      for (int i = 0; i < count; i++) {
+        futures[i] = goro.schedule(batch.queue(i), batch.task(i));
+      }
+    }
+
+    if (!intent.getBooleanExtra(EXTRA_IGNORE_ERROR, false)) {
+      for (ObservableFuture<?> future : futures) {
+        ensureErrorWillBeThrown(future);
+      }
     }
-    return START_STICKY;
   }
 
   @SuppressWarnings("unchecked")
@@ -338,6 +596,145 @@ public class GoroService extends Service {
     stopHandler.doNotStop();
   }
 
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+    stopHandler.doNotStop();
+    stopHandler.removeMessages(StopHandler.MSG_UPDATE_FOREGROUND);
+    if (binder != null) {
+      binder.listener.detach();
+    }
+  }
+
+  /**
+   * Promote the service to the foreground, update the notification or demote the service
+   * according to the current backlog. Invoked in the main thread.
+   */
+  void updateForeground() {
+    ForegroundPromotion promotion = GoroService.promotion;
+    TaskCounter counter = binder != null ? binder.listener.taskCounter : null;
+    if (promotion == null || counter == null || explicitForeground) {
+      return;
+    }
+
+    int pending = counter.get() + pendingIntents.get();
+    long average = counter.getAverageMillis();
+    long estimated = pending * average;
+    if (!promoted) {
+      if (!promotion.shouldPromote(pending, estimated)) {
+        // the counter wakes us up when the backlog grows, polling is needed only close to the threshold
+        int backlog = promotion.promotionBacklog(average);
+        int threshold = Math.max(1, backlog - pendingIntents.get());
+        counter.setBusyThreshold(threshold);
+        if (promotion.isNear(pending, average) || counter.get() >= threshold) {
+          stopHandler.updateForegroundLater(promotion.getUpdateInterval());
+        }
+        return;
+      }
+      promoted = true;
+      finishedAtPromotion = counter.getFinished();
+      startForeground(promotion.notificationId, createNotification(promotion, counter, pending, estimated));
+    } else if (pending == 0) {
+      promoted = false;
+      stopForeground(true);
+      // the next task starts watching the backlog again
+      counter.setBusyThreshold(1);
+      return;
+    } else if (pending != notifiedPending) {
+      NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+      manager.notify(promotion.notificationId, createNotification(promotion, counter, pending, estimated));
+    }
+    notifiedPending = pending;
+    stopHandler.updateForegroundLater(promotion.getUpdateInterval());
+  }
+
+  private Notification createNotification(final ForegroundPromotion promotion, final TaskCounter counter,
+                                          final int pending, final long estimated) {
+    int finished = (int) (counter.getFinished() - finishedAtPromotion);
+    Notification notification = promotion.factory.createNotification(this, pending, finished, estimated);
+    if (notification == null) {
+      throw new GoroException("Notification factory " + promotion.factory + " returned null");
+    }
+    return notification;
+  }
+
+  @Override
+  public void onTrimMemory(final int level) {
+    super.onTrimMemory(level);
+    if (goro != null) {
+      goro.trimMemory(level);
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    if (goro != null) {
+      goro.trimMemory(TRIM_MEMORY_COMPLETE);
+    }
+  }
+
+  /**
+   * Print queues state: depth, active task and its running time, age of the oldest pending task,
+   * pool utilisation, CPU time and error counts, followed by recent task events.
+   * Invoked by {@code adb shell dumpsys activity service GoroService}.
+   * Does not block workers.
+   */
+  @Override
+  protected void dump(final FileDescriptor fd, final PrintWriter writer, final String[] args) {
+    Goro goro = GoroService.goro;
+    GoroMetrics metrics = goro != null ? goro.getMetrics() : null;
+    if (metrics == null) {
+      writer.println("Goro: no metrics available");
+      return;
+    }
+    dump(metrics, writer);
+    writer.println("Recent events:");
+    goro.dumpRecentEvents(writer);
+  }
+
+  static void dump(final GoroMetrics metrics, final PrintWriter writer) {
+    writer.print("Goro: ");
+    writer.print(metrics.getActiveThreads());
+    writer.print(" busy of ");
+    writer.print(metrics.getPoolSize() < 0 ? "unknown" : String.valueOf(metrics.getPoolSize()));
+    writer.println(" pool threads");
+    // sorted for stable output
+    for (Map.Entry<String, QueueMetrics> entry : new TreeMap<>(metrics.getQueues()).entrySet()) {
+      QueueMetrics queue = entry.getValue();
+      writer.print("  ");
+      writer.print(entry.getKey());
+      writer.print(": depth=");
+      writer.print(queue.getDepth());
+      Class<?> active = queue.getActiveTask();
+      if (active != null) {
+        writer.print(", active=");
+        writer.print(active.getName());
+        writer.print(" for ");
+        writer.print(TimeUnit.NANOSECONDS.toMillis(queue.getActiveTime()));
+        writer.print("ms");
+      }
+      if (queue.getOldestPendingAge() > 0) {
+        writer.print(", oldest pending ");
+        writer.print(TimeUnit.NANOSECONDS.toMillis(queue.getOldestPendingAge()));
+        writer.print("ms");
+      }
+      writer.print(", finished=");
+      writer.print(queue.getFinished());
+      writer.print(", cpu=");
+      writer.print(TimeUnit.NANOSECONDS.toMillis(queue.getCpuTime()));
+      writer.print("ms");
+      writer.print(", errors=");
+      writer.print(queue.getErrors());
+      if (queue.getErrors() > 0) {
+        writer.print(" (last ");
+        writer.print(metrics.getTime() - queue.getLastErrorTime());
+        writer.print("ms ago)");
+      }
+      writer.println();
+    }
+  }
+
   /**
    * Return an instance of {@link com.stanfy.enroscar.goro.Goro} managed by this service.
    * Should be called from the main thread.
@@ -363,7 +760,7 @@ public class GoroService extends Service {
     GoroBinderImpl(final Goro goro, final GoroTasksListener listener) {
       this.goro = goro;
       this.listener = listener;
-      goro.addTaskListener(listener);
+      listener.attachTo(goro);
     }
 
     @Override
@@ -372,11 +769,53 @@ public class GoroService extends Service {
     }
   }
 
-  /** Listens to task events. */
-  class GoroTasksListener implements GoroListener {
+  /**
+   * Tracks active tasks. Uses the engine counter of {@link Goro.GoroImpl} with an idle callback,
+   * other implementations are tracked with task events.
+   */
+  class GoroTasksListener implements GoroListener, Runnable {
 
     int activeTasksCount;
 
+    /** Invoked by the engine when the first task is added. */
+    private final Runnable busyCallback = new Runnable() {
+      @Override
+      public void run() {
+        stopHandler.updateForeground();
+      }
+    };
+
+    /** Engine counter, null if task events are used. */
+    private TaskCounter taskCounter;
+
+    void attachTo(final Goro goro) {
+      if (goro instanceof Goro.GoroImpl) {
+        taskCounter = ((Goro.GoroImpl) goro).taskCounter;
+        taskCounter.setIdleCallback(this);
+        taskCounter.setBusyCallback(busyCallback);
+      } else {
+        goro.addTaskListener(this);
+      }
+    }
+
+    void detach() {
+      if (taskCounter != null) {
+        taskCounter.setIdleCallback(null);
+        taskCounter.setBusyCallback(null);
+      }
+    }
+
+    boolean hasActiveTasks() {
+      return taskCounter != null ? taskCounter.get() > 0 : activeTasksCount > 0;
+    }
+
+    /** Invoked by the engine when the last task in flight is done. */
+    @Override
+    public void run() {
+      stopHandler.checkForStop();
+      stopHandler.updateForeground();
+    }
+
     @Override
     public void onTaskSchedule(final Callable<?> task, final String queue) {
       stopHandler.doNotStop();
@@ -414,6 +853,8 @@ public class GoroService extends Service {
     private static final int MSG_CHECK_FOR_STOP = 1;
     /** Stop message. */
     private static final int MSG_STOP = 2;
+    /** Foreground state update message. */
+    private static final int MSG_UPDATE_FOREGROUND = 3;
 
     /** Service instance. */
     private final WeakReference<GoroService> serviceRef;
@@ -438,8 +879,23 @@ public class GoroService extends Service {
       removeMessages(MSG_CHECK_FOR_STOP);
     }
 
+    public void updateForeground() {
+      removeMessages(MSG_UPDATE_FOREGROUND);
+      sendEmptyMessage(MSG_UPDATE_FOREGROUND);
+    }
+
+    public void updateForegroundLater(final long delay) {
+      removeMessages(MSG_UPDATE_FOREGROUND);
+      sendEmptyMessageDelayed(MSG_UPDATE_FOREGROUND, delay);
+    }
+
+    private static boolean hasTasks(final GoroService service) {
+      return service.pendingIntents.get() > 0
+          || service.binder != null && service.binder.listener.hasActiveTasks();
+    }
+
     private static boolean isServiceActive(final GoroService service) {
-      boolean tasksRunning = service.binder != null && service.binder.listener.activeTasksCount > 0;
+      boolean tasksRunning = hasTasks(service);
       if (DEBUG) {
         Log.w(TAG, "isServiceActive: " + service.hasBoundUsers + ", " + tasksRunning);
       }
@@ -453,6 +909,9 @@ public class GoroService extends Service {
 
       switch (msg.what) {
         case MSG_CHECK_FOR_STOP:
+          if (!hasTasks(service)) {
+            service.stopExplicitForeground();
+          }
           if (!isServiceActive(service)) {
             if (DEBUG) {
               Log.w(TAG, "send stop");
@@ -462,12 +921,20 @@ public class GoroService extends Service {
           break;
 
         case MSG_STOP:
+          // tasks might be scheduled after the check without cancelling this message
+          if (isServiceActive(service)) {
+            break;
+          }
           if (DEBUG) {
             Log.w(TAG, "do stop");
           }
           service.stopSelf();
           break;
 
+        case MSG_UPDATE_FOREGROUND:
+          service.updateForeground();
+          break;
+
         default:
           throw new IllegalArgumentException("Unexpected message " + msg);
       }
@@ -485,9 +952,23 @@ public class GoroService extends Service {
 
     @Override
     public void onError(final Throwable error) {
+      if (error instanceof QueueRejectedException) {
+        // deferrable work dropped under memory pressure is not a bug
+        Log.w(TAG, "Task is rejected", error);
+        return;
+      }
+      Goro goro = GoroService.goro;
+      if (goro == null) {
+        throw new GoroException("Uncaught error thrown by a task scheduled with startService()", error);
+      }
+      StringWriter events = new StringWriter();
+      PrintWriter writer = new PrintWriter(events);
+      goro.dumpRecentEvents(writer);
+      writer.flush();
       throw new GoroException(
           "Uncaught error thrown by a task scheduled with startService()",
-          error
+          error,
+          events.toString()
       );
     }
   }
@@ -0,0 +1,78 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of non-negative values.
+ * Each power of two is split into {@link #SUB_BUCKETS} linear buckets,
+ * so a recorded value is known with the relative error of 1/{@value #SUB_BUCKETS}.
+ */
+final class Histogram {
+
+  /** Number of bits used to index linear buckets. */
+  static final int SUB_BITS = 3;
+  /** Number of linear buckets in a power of two. */
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+  /** Total number of buckets able to hold any positive long. */
+  static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  /** Bucket counters. */
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  static int index(final long value) {
+    if (value < SUB_BUCKETS) {
+      return value < 0 ? 0 : (int) value;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+  }
+
+  /** @return the smallest value that goes to a bucket */
+  static long lowestValue(final int index) {
+    int bucket = index >>> SUB_BITS;
+    if (bucket == 0) {
+      return index;
+    }
+    return (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1))) << (bucket - 1);
+  }
+
+  /** @return the largest value that goes to a bucket */
+  static long highestValue(final int index) {
+    int bucket = index >>> SUB_BITS;
+    return bucket == 0 ? index : lowestValue(index) + (1L << (bucket - 1)) - 1;
+  }
+
+  void record(final long value) {
+    counts.incrementAndGet(index(value));
+  }
+
+  /** @return copy of non-empty bucket counters, taken without locking */
+  HistogramSnapshot snapshot() {
+    int[] indexes = null;
+    long[] values = null;
+    int size = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      long count = counts.get(i);
+      if (count == 0) {
+        continue;
+      }
+      if (indexes == null) {
+        indexes = new int[SUB_BUCKETS];
+        values = new long[SUB_BUCKETS];
+      } else if (size == indexes.length) {
+        int[] largerIndexes = new int[size << 1];
+        long[] largerValues = new long[size << 1];
+        System.arraycopy(indexes, 0, largerIndexes, 0, size);
+        System.arraycopy(values, 0, largerValues, 0, size);
+        indexes = largerIndexes;
+        values = largerValues;
+      }
+      indexes[size] = i;
+      values[size] = count;
+      size++;
+    }
+    return size == 0 ? HistogramSnapshot.EMPTY : new HistogramSnapshot(indexes, values, size);
+  }
+
+}
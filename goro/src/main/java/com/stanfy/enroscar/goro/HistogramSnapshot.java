@@ -0,0 +1,84 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Snapshot of a latency histogram. Values are in nanoseconds.
+ * Each value is known with the relative error of 12.5%: values are reported as the highest value
+ * of the histogram bucket they went to.
+ */
+public final class HistogramSnapshot {
+
+  /** Snapshot without values. */
+  static final HistogramSnapshot EMPTY = new HistogramSnapshot(new int[0], new long[0], 0);
+
+  /** Indexes of non-empty buckets, ascending. */
+  private final int[] indexes;
+  /** Counters of non-empty buckets, in the same positions as indexes. */
+  private final long[] counts;
+  /** Number of non-empty buckets. */
+  private final int size;
+  /** Total number of values. */
+  private final long count;
+
+  HistogramSnapshot(final int[] indexes, final long[] counts, final int size) {
+    this.indexes = indexes;
+    this.counts = counts;
+    this.size = size;
+    long count = 0;
+    for (int i = 0; i < size; i++) {
+      count += counts[i];
+    }
+    this.count = count;
+  }
+
+  /** @return number of recorded values */
+  public long getCount() {
+    return count;
+  }
+
+  /** @return maximum recorded value, 0 if there are no values */
+  public long getMax() {
+    return size == 0 ? 0 : Histogram.highestValue(indexes[size - 1]);
+  }
+
+  /** @return mean of recorded values, 0 if there are no values */
+  public long getMean() {
+    if (count == 0) {
+      return 0;
+    }
+    double sum = 0;
+    for (int i = 0; i < size; i++) {
+      long low = Histogram.lowestValue(indexes[i]);
+      sum += counts[i] * (low + (Histogram.highestValue(indexes[i]) - low) / 2.0);
+    }
+    return (long) (sum / count);
+  }
+
+  /**
+   * @param percentile percentile between 0 and 100
+   * @return value that is not exceeded by the specified percentage of recorded values
+   */
+  public long getValueAtPercentile(final double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be in range [0, 100]");
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+    long seen = 0;
+    for (int i = 0; i < size; i++) {
+      seen += counts[i];
+      if (seen >= target) {
+        return Histogram.highestValue(indexes[i]);
+      }
+    }
+    return getMax();
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + count + ", p50=" + getValueAtPercentile(50) + "ns, p99=" + getValueAtPercentile(99)
+        + "ns, max=" + getMax() + "ns";
+  }
+
+}
@@ -15,7 +15,7 @@ class ListenersHandler extends BaseListenersHandler {
 
   /** Message code. */
   private static final int MSG_START = 1, MSG_FINISH = 2, MSG_ERROR = 3, MSG_CANCEL = 4,
-                           MSG_SCHEDULE = 5;
+                           MSG_SCHEDULE = 5, MSG_SCHEDULE_BATCH = 6;
 
   /** Initial capacity. */
   private static final int INIT_CAPACITY = 5;
@@ -33,6 +33,17 @@ class ListenersHandler extends BaseListenersHandler {
     h.sendMessage(msg);
   }
 
+  /**
+   * Post one message for several scheduled tasks.
+   * @param tasks scheduled tasks
+   * @param queues queue names, in the same order as tasks
+   */
+  public void postScheduleBatch(final Callable<?>[] tasks, final String[] queues) {
+    Message msg = h.obtainMessage(MSG_SCHEDULE_BATCH);
+    msg.obj = new MessageData(tasks, queues);
+    h.sendMessage(msg);
+  }
+
   public void postStart(final Callable<?> task) {
     Message msg = h.obtainMessage(MSG_START);
     msg.obj = new MessageData(task, null, null);
@@ -93,6 +104,14 @@ class ListenersHandler extends BaseListenersHandler {
           }
           break;
 
+        case MSG_SCHEDULE_BATCH:
+          for (GoroListener listener : taskListeners) {
+            for (int i = 0; i < data.tasks.length; i++) {
+              listener.onTaskSchedule(data.tasks[i], data.queues[i]);
+            }
+          }
+          break;
+
         case MSG_START:
           for (GoroListener listener : taskListeners) {
             listener.onTaskStart(data.task);
@@ -133,11 +152,25 @@ class ListenersHandler extends BaseListenersHandler {
     final Callable<?> task;
     /** Error instance. */
     final Object resultOrError;
+    /** Batch tasks. */
+    final Callable<?>[] tasks;
+    /** Queue names of batch tasks. */
+    final String[] queues;
 
     public MessageData(final Callable<?> task, final Object resultOrError, final String queue) {
       this.task = task;
       this.resultOrError = resultOrError;
       this.queue = queue;
+      this.tasks = null;
+      this.queues = null;
+    }
+
+    public MessageData(final Callable<?>[] tasks, final String[] queues) {
+      this.task = null;
+      this.resultOrError = null;
+      this.queue = null;
+      this.tasks = tasks;
+      this.queues = queues;
     }
   }
 
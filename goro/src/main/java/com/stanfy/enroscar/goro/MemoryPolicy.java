@@ -0,0 +1,205 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_COMPLETE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_MODERATE;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+import static android.content.ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN;
+
+/**
+ * Describes how Goro reacts to memory pressure reported with
+ * {@link android.content.ComponentCallbacks2#onTrimMemory(int)} and counts what was done.
+ * Each trim level is mapped to a set of actions. A level without a mapping uses the mapping
+ * of the closest lower level. Actions that keep a state (shrunk pool, paused or rejecting queues)
+ * stay in effect until a trim level that does not include them is reported
+ * or until the {@link #resumeAfter(long) resume timeout} passes without new trim calls.
+ * <pre>
+ *   goro.setMemoryPolicy(MemoryPolicy.defaultPolicy().deferrable("prefetch"));
+ * </pre>
+ * @see Goro#trimMemory(int)
+ */
+public final class MemoryPolicy {
+
+  /** Reduce core size of the threads pool to one thread. */
+  public static final int SHRINK_POOL = 1;
+  /** Drop queues that have no tasks, they are recreated on demand. */
+  public static final int EVICT_IDLE_QUEUES = 2;
+  /** Stop starting tasks from deferrable queues, they are kept in the queues. */
+  public static final int PAUSE_DEFERRABLE = 4;
+  /** Reject new tasks added to deferrable queues. */
+  public static final int REJECT_DEFERRABLE = 8;
+
+  /** Actions that stay in effect after a trim call. */
+  static final int STATEFUL_ACTIONS = SHRINK_POOL | PAUSE_DEFERRABLE | REJECT_DEFERRABLE;
+
+  /** Resume timeout used by the default policy, in milliseconds. */
+  public static final long DEFAULT_RESUME_TIMEOUT = 60000;
+
+  /** Levels with configured actions, sorted. */
+  private int[] levels = new int[0];
+  /** Actions for levels. */
+  private int[] actions = new int[0];
+
+  /** Names of deferrable queues. */
+  private String[] deferrable = new String[0];
+
+  /** Time in milliseconds after which restrictions are lifted, 0 to keep them. */
+  private volatile long resumeTimeout;
+
+  /** Number of handled trim calls. */
+  private final AtomicInteger trimCount = new AtomicInteger();
+  /** Last reported level. */
+  private volatile int lastLevel;
+  /** Actions applied for the last reported level. */
+  private volatile int lastActions;
+  /** Number of evicted queues. */
+  private final AtomicLong evictedQueues = new AtomicLong();
+  /** Number of rejected tasks. */
+  private final AtomicLong rejectedTasks = new AtomicLong();
+  /** Number of times restrictions were lifted by the timeout. */
+  private final AtomicInteger resumeCount = new AtomicInteger();
+
+  /**
+   * Default policy: evicts idle queues when running low or in background,
+   * shrinks the pool and pauses deferrable queues at critical and moderate levels,
+   * also rejects deferrable work when the process is about to be killed.
+   * Restrictions are lifted after {@link #DEFAULT_RESUME_TIMEOUT} without new trim calls.
+   */
+  public static MemoryPolicy defaultPolicy() {
+    return new MemoryPolicy()
+        .resumeAfter(DEFAULT_RESUME_TIMEOUT)
+        .on(TRIM_MEMORY_RUNNING_LOW, EVICT_IDLE_QUEUES)
+        .on(TRIM_MEMORY_RUNNING_CRITICAL, EVICT_IDLE_QUEUES | SHRINK_POOL | PAUSE_DEFERRABLE)
+        .on(TRIM_MEMORY_UI_HIDDEN, 0)
+        .on(TRIM_MEMORY_BACKGROUND, EVICT_IDLE_QUEUES)
+        .on(TRIM_MEMORY_MODERATE, EVICT_IDLE_QUEUES | SHRINK_POOL | PAUSE_DEFERRABLE)
+        .on(TRIM_MEMORY_COMPLETE, EVICT_IDLE_QUEUES | SHRINK_POOL | PAUSE_DEFERRABLE | REJECT_DEFERRABLE);
+  }
+
+  /**
+   * Set actions performed for a trim level.
+   * @param level trim level
+   * @param actions combination of action flags, 0 for nothing
+   * @return this policy
+   */
+  public synchronized MemoryPolicy on(final int level, final int actions) {
+    int index = Arrays.binarySearch(levels, level);
+    if (index >= 0) {
+      this.actions[index] = actions;
+      return this;
+    }
+    int insert = -index - 1;
+    int[] newLevels = new int[levels.length + 1];
+    int[] newActions = new int[levels.length + 1];
+    System.arraycopy(levels, 0, newLevels, 0, insert);
+    System.arraycopy(this.actions, 0, newActions, 0, insert);
+    newLevels[insert] = level;
+    newActions[insert] = actions;
+    System.arraycopy(levels, insert, newLevels, insert + 1, levels.length - insert);
+    System.arraycopy(this.actions, insert, newActions, insert + 1, levels.length - insert);
+    levels = newLevels;
+    this.actions = newActions;
+    return this;
+  }
+
+  /**
+   * Mark queues as deferrable: their work may be paused or rejected under memory pressure.
+   * @param queueNames queue names
+   * @return this policy
+   */
+  public synchronized MemoryPolicy deferrable(final String... queueNames) {
+    String[] names = new String[deferrable.length + queueNames.length];
+    System.arraycopy(deferrable, 0, names, 0, deferrable.length);
+    System.arraycopy(queueNames, 0, names, deferrable.length, queueNames.length);
+    deferrable = names;
+    return this;
+  }
+
+  /**
+   * Lift restrictions (shrunk pool, paused or rejecting queues) when no trim call is reported
+   * during a given time. The system does not report that memory pressure is gone,
+   * so without a timeout restrictions stay until a trim level that does not include them.
+   * @param millis timeout in milliseconds, 0 to keep restrictions
+   * @return this policy
+   */
+  public MemoryPolicy resumeAfter(final long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Timeout must not be negative");
+    }
+    this.resumeTimeout = millis;
+    return this;
+  }
+
+  /** @return time in milliseconds after which restrictions are lifted, 0 if they are kept */
+  public long getResumeTimeout() {
+    return resumeTimeout;
+  }
+
+  synchronized int actionsFor(final int level) {
+    int result = 0;
+    for (int i = 0; i < levels.length && levels[i] <= level; i++) {
+      result = actions[i];
+    }
+    return result;
+  }
+
+  /** @return names of deferrable queues, the array must not be modified */
+  synchronized String[] deferrableQueues() {
+    return deferrable;
+  }
+
+  void recordTrim(final int level, final int actions) {
+    trimCount.incrementAndGet();
+    lastLevel = level;
+    lastActions = actions;
+  }
+
+  void recordEvicted(final int count) {
+    evictedQueues.addAndGet(count);
+  }
+
+  void recordRejected() {
+    rejectedTasks.incrementAndGet();
+  }
+
+  void recordResumed() {
+    resumeCount.incrementAndGet();
+    lastActions = 0;
+  }
+
+  /** @return number of handled trim calls */
+  public int getTrimCount() {
+    return trimCount.get();
+  }
+
+  /** @return last reported trim level */
+  public int getLastLevel() {
+    return lastLevel;
+  }
+
+  /** @return actions applied for the last reported trim level */
+  public int getLastActions() {
+    return lastActions;
+  }
+
+  /** @return total number of evicted idle queues */
+  public long getEvictedQueues() {
+    return evictedQueues.get();
+  }
+
+  /** @return number of times restrictions were lifted by the resume timeout */
+  public int getResumeCount() {
+    return resumeCount.get();
+  }
+
+  /** @return total number of tasks rejected from deferrable queues */
+  public long getRejectedTasks() {
+    return rejectedTasks.get();
+  }
+
+}
@@ -0,0 +1,178 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Debug;
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records per-queue task metrics. Recording does not lock and does not allocate
+ * once a queue and a task class are seen.
+ * Each queue executor keeps its {@link QueueRecorder} and reports to it directly,
+ * reusing its own clock reads. Started and finished tasks are counted by the wait and run time
+ * histograms, so a task costs two histogram updates and the running task state.
+ * Tasks of a queue run one at a time, so the state of the running task is kept per queue.
+ * Thread CPU time is measured only while enabled: it costs two clock reads per task.
+ */
+final class MetricsRecorder {
+
+  /** Metrics by queue name. */
+  private final ConcurrentHashMap<String, QueueRecorder> queues = new ConcurrentHashMap<>();
+
+  /** Metrics of tasks beyond any queue. */
+  final QueueRecorder direct = new QueueRecorder(false);
+
+  /** Whether thread CPU time of tasks is measured. */
+  volatile boolean cpuTimeTracking;
+
+  /**
+   * @param name queue name
+   * @return recorder of a queue, created if the queue is not known yet
+   */
+  QueueRecorder queue(final String name) {
+    QueueRecorder recorder = queues.get(name);
+    if (recorder == null) {
+      QueueRecorder created = new QueueRecorder(true);
+      recorder = queues.putIfAbsent(name, created);
+      if (recorder == null) {
+        recorder = created;
+      }
+    }
+    return recorder;
+  }
+
+  /**
+   * Forget metrics of an evicted queue.
+   * @param name queue name
+   * @param recorder recorder used by the evicted queue, a newer recorder of the same queue is kept
+   */
+  void remove(final String name, final QueueRecorder recorder) {
+    queues.remove(name, recorder);
+  }
+
+  /**
+   * @param queues queues the recorded tasks pass through
+   * @return metrics snapshot
+   */
+  GoroMetrics snapshot(final Queues queues) {
+    long time = SystemClock.uptimeMillis();
+    long nanoTime = System.nanoTime();
+    HashMap<String, QueueMetrics> result = new HashMap<>();
+    QueueMetrics direct = this.direct.snapshot(null, time, nanoTime, 0);
+    long running = direct.getRunning();
+    for (Map.Entry<String, QueueRecorder> entry : this.queues.entrySet()) {
+      String name = entry.getKey();
+      long oldest = queues.getOldestAddTime(name);
+      long oldestPending = oldest == 0 ? 0 : Math.max(0, nanoTime - oldest);
+      QueueMetrics metrics = entry.getValue().snapshot(name, time, nanoTime, oldestPending);
+      running += metrics.getRunning();
+      result.put(name, metrics);
+    }
+    return new GoroMetrics(time, (int) running, queues.getPoolSize(), result, direct);
+  }
+
+  /** Counters of one queue. */
+  final class QueueRecorder {
+    /** Whether tasks run one at a time, so that the running task can be tracked. */
+    private final boolean serial;
+    /** Counters. */
+    final AtomicLong added = new AtomicLong(), removed = new AtomicLong();
+    /** Time spent in the queue, one value per started task. */
+    final Histogram waitTime = new Histogram();
+    /** Time spent running, one value per finished task. */
+    final Histogram runTime = new Histogram();
+    /** Number of failed tasks. */
+    final AtomicLong errors = new AtomicLong();
+    /** Uptime of the last failure. */
+    volatile long lastErrorTime;
+    /** Class of the running task, null if the queue is idle. */
+    volatile Class<?> activeTask;
+    /** {@link System#nanoTime()} when the running task has started. */
+    volatile long activeStart;
+    /** Total CPU time of finished tasks. */
+    final AtomicLong cpuTime = new AtomicLong();
+    /** CPU time by task class. */
+    final ConcurrentHashMap<Class<?>, AtomicLong> taskCpuTimes = new ConcurrentHashMap<>();
+
+    QueueRecorder(final boolean serial) {
+      this.serial = serial;
+    }
+
+    void onAdded(final int count) {
+      added.addAndGet(count);
+    }
+
+    /**
+     * Invoked on the worker thread.
+     * @param startNanos {@link System#nanoTime()} when the task has started
+     * @return thread CPU time, to be passed to {@link #onFinished(Runnable, long, long, boolean)},
+     *         -1 if not measured
+     */
+    long onStarted(final Runnable task, final long startNanos, final long waitNanos) {
+      if (serial) {
+        activeStart = startNanos;
+        activeTask = Util.taskClass(task);
+      }
+      waitTime.record(waitNanos);
+      // -1 if not supported
+      return cpuTimeTracking ? Debug.threadCpuTimeNanos() : -1;
+    }
+
+    /** Invoked on the worker thread. */
+    void onFinished(final Runnable task, final long runNanos, final long cpuStart,
+                    final boolean failed) {
+      if (cpuStart >= 0) {
+        recordCpuTime(Util.taskClass(task), Debug.threadCpuTimeNanos() - cpuStart);
+      }
+      activeTask = null;
+      if (failed) {
+        lastErrorTime = SystemClock.uptimeMillis();
+        errors.incrementAndGet();
+      }
+      runTime.record(runNanos);
+    }
+
+    void onRemoved(final int count) {
+      removed.addAndGet(count);
+    }
+
+    void recordCpuTime(final Class<?> taskClass, final long nanos) {
+      AtomicLong counter = taskCpuTimes.get(taskClass);
+      if (counter == null) {
+        AtomicLong created = new AtomicLong();
+        counter = taskCpuTimes.putIfAbsent(taskClass, created);
+        if (counter == null) {
+          counter = created;
+        }
+      }
+      counter.addAndGet(nanos);
+      cpuTime.addAndGet(nanos);
+    }
+
+    QueueMetrics snapshot(final String name, final long time, final long nanoTime,
+                          final long oldestPending) {
+      // read in reverse order of updates, so that derived values are not negative
+      HistogramSnapshot runTime = this.runTime.snapshot();
+      HistogramSnapshot waitTime = this.waitTime.snapshot();
+      long finished = runTime.getCount();
+      long started = waitTime.getCount();
+      long removed = this.removed.get();
+      long added = this.added.get();
+      long errors = this.errors.get();
+      Class<?> activeTask = this.activeTask;
+      long activeNanos = activeTask == null ? 0 : Math.max(0, nanoTime - activeStart);
+      HashMap<Class<?>, Long> taskCpuTimes = new HashMap<>();
+      for (Map.Entry<Class<?>, AtomicLong> entry : this.taskCpuTimes.entrySet()) {
+        taskCpuTimes.put(entry.getKey(), entry.getValue().get());
+      }
+      return new QueueMetrics(name, time, added, started, finished, removed,
+          waitTime, runTime,
+          activeTask, activeNanos, oldestPending, errors, errors == 0 ? 0 : lastErrorTime,
+          cpuTime.get(), taskCpuTimes);
+    }
+  }
+
+}
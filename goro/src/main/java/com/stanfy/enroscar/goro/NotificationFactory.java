@@ -0,0 +1,24 @@
+package com.stanfy.enroscar.goro;
+
+import android.app.Notification;
+import android.content.Context;
+
+/**
+ * Builds notifications shown while {@link GoroService} promotes itself to the foreground
+ * because of a large backlog.
+ * @see ForegroundPromotion
+ */
+public interface NotificationFactory {
+
+  /**
+   * Invoked in the main thread when the service is promoted and then each time the progress
+   * changes, not more often than {@link ForegroundPromotion#updateInterval(long)}.
+   * @param context service context
+   * @param pendingTasks number of tasks that are not finished yet
+   * @param finishedTasks number of tasks finished since the promotion
+   * @param estimatedMillis estimated time required to finish pending tasks, 0 if unknown
+   * @return notification to show, must not be null
+   */
+  Notification createNotification(Context context, int pendingTasks, int finishedTasks, long estimatedMillis);
+
+}
@@ -17,4 +17,13 @@ public interface ObservableFuture<V> extends Future<V> {
 
   void subscribe(FutureObserver<V> observer);
 
+  /**
+   * Listen to progress reported by a {@link ProgressAware} task.
+   * Values reported more often than allowed are coalesced: the observer gets the latest one.
+   * @param executor executor used to notify the observer
+   * @param minIntervalMillis minimum time between two notifications, in milliseconds
+   * @param observer progress observer
+   */
+  void subscribeProgress(Executor executor, long minIntervalMillis, ProgressObserver observer);
+
 }
@@ -3,74 +3,213 @@ package com.stanfy.enroscar.goro;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.ServiceConnection;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
 
+import java.io.PrintWriter;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 
 /**
  * Implementation of {@link Goro} that binds to a {@link GoroService}
- * when a new job should be scheduled, passes the job to the service and unbinds asap.
+ * when a new job should be scheduled, passes the job to the service and unbinds
+ * when no calls are made during the linger period.
  */
-class OnDemandBindingGoro extends BufferedGoroDelegate implements ServiceConnection {
+class OnDemandBindingGoro extends OnDemandGoro implements ServiceConnection {
 
   private final Context context;
-  private boolean bindRequested;
 
-  OnDemandBindingGoro(final Context context) {
+  /** How long to stay bound after the last call. */
+  private final long lingerMillis;
+
+  /** Buffers calls until the service is connected. */
+  private final Calls calls = new Calls();
+
+  /** Posts delayed unbinding. */
+  private final Handler handler;
+
+  /** Whether binding is requested. Checked without the lock on each call. */
+  private volatile boolean bindRequested;
+
+  /** Time of the last call. */
+  private volatile long lastCallTime;
+
+  /** Time of the last bind request. Guarded by this. */
+  private long bindRequestTime;
+
+  /** Bind requests counter. */
+  private volatile int bindCount;
+
+  /** Total time between bind requests and connections. */
+  private volatile long bindWaitTime;
+
+  /** Unbinds if there were no calls during the linger period. */
+  private final Runnable lingerCheck = new Runnable() {
+    @Override
+    public void run() {
+      unbindIfIdle();
+    }
+  };
+
+  OnDemandBindingGoro(final Context context, final long lingerMillis) {
     this.context = context;
+    this.lingerMillis = lingerMillis;
+    this.handler = new Handler(Looper.getMainLooper());
+  }
+
+  private void onCall() {
+    if (lingerMillis > 0) {
+      lastCallTime = SystemClock.uptimeMillis();
+    }
+    // a call buffered while unbinding must not wait for the next one
+    if (!bindRequested || calls.delegate() == null) {
+      bindIfRequired();
+    }
   }
 
   private synchronized void bindIfRequired() {
     if (!bindRequested) {
       bindRequested = true;
+      bindCount++;
+      bindRequestTime = SystemClock.uptimeMillis();
       GoroService.bind(context, this);
     }
   }
 
   private synchronized void unbindIfRequired() {
-    if (bindRequested && updateDelegate(null)) {
+    handler.removeCallbacks(lingerCheck);
+    if (bindRequested && calls.updateDelegate(null)) {
       bindRequested = false;
       GoroService.unbind(context, this);
     }
   }
 
+  private synchronized void unbindIfIdle() {
+    if (calls.delegate() == null) {
+      // disconnected meanwhile
+      return;
+    }
+    // calls made after the check was posted extend the linger period
+    long left = lastCallTime + lingerMillis - SystemClock.uptimeMillis();
+    if (left > 0) {
+      handler.postDelayed(lingerCheck, left);
+    } else {
+      unbindIfRequired();
+    }
+  }
+
+  @Override
+  public int getBindCount() {
+    return bindCount;
+  }
+
+  @Override
+  public long getBindWaitTimeMillis() {
+    return bindWaitTime;
+  }
+
   @Override
   public final void addTaskListener(final GoroListener listener) {
-    super.addTaskListener(listener);
-    bindIfRequired();
+    calls.addTaskListener(listener);
+    onCall();
   }
 
   @Override
   public final void removeTaskListener(final GoroListener listener) {
-    super.removeTaskListener(listener);
-    bindIfRequired();
+    calls.removeTaskListener(listener);
+    onCall();
+  }
+
+  @Override
+  public final <T> ObservableFuture<T> schedule(final Callable<T> task) {
+    return schedule(DEFAULT_QUEUE, task);
   }
 
   @Override
   public final <T> ObservableFuture<T> schedule(final String queueName, final Callable<T> task) {
-    ObservableFuture<T> result = super.schedule(queueName, task);
-    bindIfRequired();
+    ObservableFuture<T> result = calls.schedule(queueName, task);
+    onCall();
     return result;
   }
 
+  @Override
+  public final void post(final Runnable task) {
+    post(DEFAULT_QUEUE, task);
+  }
+
+  @Override
+  public final void post(final String queueName, final Runnable task) {
+    calls.post(queueName, task);
+    onCall();
+  }
+
+  @Override
+  public final void setErrorHandler(final String queueName, final QueueErrorHandler handler) {
+    calls.setErrorHandler(queueName, handler);
+    onCall();
+  }
+
   @Override
   public final Executor getExecutor(final String queueName) {
-    Executor executor = super.getExecutor(queueName);
-    bindIfRequired();
+    Executor executor = calls.getExecutor(queueName);
+    onCall();
     return executor;
   }
 
   @Override
   protected final void removeTasksInQueue(final String queueName) {
-    super.removeTasksInQueue(queueName);
-    bindIfRequired();
+    calls.removeTasksInQueue(queueName);
+    onCall();
+  }
+
+  @Override
+  public void setMemoryPolicy(final MemoryPolicy policy) {
+    calls.setMemoryPolicy(policy);
+  }
+
+  @Override
+  public void trimMemory(final int level) {
+    calls.trimMemory(level);
+  }
+
+  @Override
+  public void setCpuTimeTracking(final boolean enabled) {
+    calls.setCpuTimeTracking(enabled);
+  }
+
+  @Override
+  public void setSlowTaskWatchdog(final SlowTaskWatchdog watchdog) {
+    calls.setSlowTaskWatchdog(watchdog);
+  }
+
+  @Override
+  public void setTimelineRecorder(final TimelineRecorder recorder) {
+    calls.setTimelineRecorder(recorder);
+  }
+
+  @Override
+  public void dumpRecentEvents(final PrintWriter writer) {
+    calls.dumpRecentEvents(writer);
+  }
+
+  @Override
+  public GoroMetrics getMetrics() {
+    return calls.getMetrics();
   }
 
   @Override
   public void onServiceConnected(final ComponentName name, final IBinder binder) {
-    updateDelegate(Goro.from(binder));
-    unbindIfRequired();
+    synchronized (this) {
+      bindWaitTime += SystemClock.uptimeMillis() - bindRequestTime;
+    }
+    calls.updateDelegate(Goro.from(binder));
+    if (lingerMillis > 0) {
+      handler.postDelayed(lingerCheck, lingerMillis);
+    } else {
+      unbindIfRequired();
+    }
   }
 
   @Override
@@ -78,4 +217,7 @@ class OnDemandBindingGoro extends BufferedGoroDelegate implements ServiceConnect
     unbindIfRequired();
   }
 
+  /** Buffered calls, kept out of the public class hierarchy. */
+  private static final class Calls extends BufferedGoroDelegate { }
+
 }
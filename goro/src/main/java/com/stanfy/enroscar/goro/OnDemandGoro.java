@@ -0,0 +1,20 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Handles tasks in multiple queues using a worker service, binding to it on demand.
+ * The connection is kept for a linger period after the last call, calls made during this period
+ * are passed to the service directly.
+ * @see Goro#bindOnDemandWith(android.content.Context, long)
+ */
+public abstract class OnDemandGoro extends Goro {
+
+  /** @return how many times binding to the service was requested */
+  public abstract int getBindCount();
+
+  /**
+   * @return total time in milliseconds between bind requests and service connections,
+   *         calls made meanwhile are buffered
+   */
+  public abstract long getBindWaitTimeMillis();
+
+}
@@ -0,0 +1,181 @@
+package com.stanfy.enroscar.goro;
+
+import com.stanfy.enroscar.goro.Goro.GoroImpl;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Calls buffered by {@link BufferedGoroDelegate} until a delegate is available.
+ * Calls are grouped by queue. Each group is replayed in order, and tasks of a group
+ * that follow each other are added to the delegate queue in one step.
+ * Calls are kept in linked lists, so that a cancelled call is removed in constant time.
+ * Not thread safe.
+ */
+final class PostponedCalls {
+
+  /** Groups by queue name, in order of the first call. */
+  private final LinkedHashMap<String, Group> groups = new LinkedHashMap<>();
+
+  /** Calls not related to any queue. Replayed first. */
+  private final Group global = new Group(this, null);
+
+  /** Number of buffered calls. */
+  private int size;
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Buffer a call not related to any queue.
+   * @param action call to buffer
+   * @return list node that can be used to remove the call
+   */
+  Node addGlobal(final Action action) {
+    return append(global, action);
+  }
+
+  /**
+   * Buffer a call related to a queue.
+   * @param queueName queue name, may be null
+   * @param action call to buffer
+   * @return list node that can be used to remove the call
+   */
+  Node add(final String queueName, final Action action) {
+    Group group = groups.get(queueName);
+    if (group == null) {
+      group = new Group(this, queueName);
+      groups.put(queueName, group);
+    }
+    return append(group, action);
+  }
+
+  private Node append(final Group group, final Action action) {
+    Node node = new Node(action, group);
+    if (group.tail == null) {
+      group.head = node;
+    } else {
+      group.tail.next = node;
+      node.prev = group.tail;
+    }
+    group.tail = node;
+    group.size++;
+    size++;
+    return node;
+  }
+
+  /**
+   * Remove a buffered call.
+   * @param node list node returned by one of add methods
+   * @return false if the call does not belong to this buffer
+   */
+  boolean remove(final Node node) {
+    Group group = node.group;
+    if (group.owner != this || (node.prev == null && group.head != node)) {
+      return false;
+    }
+    if (node.prev == null) {
+      group.head = node.next;
+    } else {
+      node.prev.next = node.next;
+    }
+    if (node.next == null) {
+      group.tail = node.prev;
+    } else {
+      node.next.prev = node.prev;
+    }
+    node.prev = null;
+    node.next = null;
+    group.size--;
+    size--;
+    return true;
+  }
+
+  /**
+   * Pass all the buffered calls to the delegate.
+   * @param goro delegate instance
+   */
+  void replayTo(final Goro goro) {
+    for (Node node = global.head; node != null; node = node.next) {
+      node.action.act(goro);
+    }
+
+    GoroImpl impl = goro instanceof GoroImpl ? (GoroImpl) goro : null;
+    for (Group group : groups.values()) {
+      if (impl == null) {
+        for (Node node = group.head; node != null; node = node.next) {
+          node.action.act(goro);
+        }
+        continue;
+      }
+
+      Runnable[] batch = new Runnable[group.size];
+      int count = 0;
+      for (Node node = group.head; node != null; node = node.next) {
+        if (node.action instanceof QueuedAction) {
+          Runnable task = ((QueuedAction) node.action).toTask(impl);
+          if (task != null) {
+            batch[count++] = task;
+          }
+        } else {
+          if (count > 0) {
+            impl.enqueue(group.queue, batch, count);
+            count = 0;
+          }
+          node.action.act(goro);
+        }
+      }
+      if (count > 0) {
+        impl.enqueue(group.queue, batch, count);
+      }
+    }
+  }
+
+  /** Some postponed action. */
+  interface Action {
+    void act(Goro goro);
+  }
+
+  /** Postponed action that ends up as a task in the group queue. */
+  interface QueuedAction extends Action {
+    /**
+     * Prepare a task to be added to the queue. The task must not be added here.
+     * @param goro delegate instance
+     * @return task to add to the queue, null if there is nothing to add
+     */
+    Runnable toTask(GoroImpl goro);
+  }
+
+  /** List node. */
+  static final class Node {
+    /** Buffered call. */
+    final Action action;
+    /** Owning group. */
+    final Group group;
+    /** Neighbours. */
+    Node prev, next;
+
+    Node(final Action action, final Group group) {
+      this.action = action;
+      this.group = group;
+    }
+  }
+
+  /** Calls related to one queue. */
+  private static final class Group {
+    /** Owning buffer. */
+    final PostponedCalls owner;
+    /** Queue name. */
+    final String queue;
+    /** List boundaries. */
+    Node head, tail;
+    /** Number of calls in this group. */
+    int size;
+
+    Group(final PostponedCalls owner, final String queue) {
+      this.owner = owner;
+      this.queue = queue;
+    }
+  }
+
+}
@@ -0,0 +1,18 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Indicates a task that reports its progress.
+ * Before the task is started Goro supplies it with a {@link ProgressReporter}
+ * that passes reported values to progress observers of the task future.
+ *
+ * @see ObservableFuture#subscribeProgress(java.util.concurrent.Executor, long, ProgressObserver)
+ */
+public interface ProgressAware {
+
+  /**
+   * Invoked by Goro in the worker thread right before the task is called.
+   * You are not supposed to invoke this method manually except in tests code.
+   */
+  void injectProgressReporter(ProgressReporter reporter);
+
+}
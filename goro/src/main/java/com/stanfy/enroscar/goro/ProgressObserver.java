@@ -0,0 +1,10 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Task progress listener.
+ */
+public interface ProgressObserver {
+
+  void onProgress(Object progress);
+
+}
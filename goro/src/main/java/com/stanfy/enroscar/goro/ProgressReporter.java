@@ -0,0 +1,16 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Progress channel of a running task.
+ * Reporting is cheap: values are not queued, observers get only the latest one
+ * at the rate they have asked for.
+ */
+public interface ProgressReporter {
+
+  /**
+   * Report task progress. Values reported after the task is done are ignored.
+   * @param progress progress value, its meaning is defined by the task
+   */
+  void report(Object progress);
+
+}
@@ -0,0 +1,20 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Handles errors thrown by tasks posted to a queue with {@link Goro#post(String, Runnable)}
+ * or passed to a queue executor.
+ * Tasks scheduled with {@link Goro#schedule(String, java.util.concurrent.Callable)} report their errors
+ * to observers and listeners instead.
+ */
+public interface QueueErrorHandler {
+
+  /**
+   * Invoked in the worker thread after a task throws.
+   * The queue continues with the next task after this method returns.
+   * @param queueName name of the queue the task was executed in
+   * @param task failed task
+   * @param error thrown error
+   */
+  void onError(String queueName, Runnable task, Throwable error);
+
+}
@@ -0,0 +1,167 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Snapshot of metrics of one queue.
+ * @see GoroMetrics
+ */
+public final class QueueMetrics {
+
+  /** Queue name. */
+  private final String name;
+  /** Snapshot time. */
+  private final long time;
+  /** Counters. */
+  private final long added, started, finished, removed;
+  /** Histograms. */
+  private final HistogramSnapshot waitTime, runTime;
+  /** Class of the running task. */
+  private final Class<?> activeTask;
+  /** Time values in nanoseconds. */
+  private final long activeNanos, oldestPendingNanos;
+  /** Number of failed tasks. */
+  private final long errors;
+  /** Uptime of the last failure. */
+  private final long lastErrorTime;
+  /** CPU time of finished tasks. */
+  private final long cpuTime;
+  /** CPU time by task class. */
+  private final Map<Class<?>, Long> taskCpuTimes;
+
+  QueueMetrics(final String name, final long time, final long added, final long started,
+               final long finished, final long removed,
+               final HistogramSnapshot waitTime, final HistogramSnapshot runTime,
+               final Class<?> activeTask, final long activeNanos, final long oldestPendingNanos,
+               final long errors, final long lastErrorTime,
+               final long cpuTime, final Map<Class<?>, Long> taskCpuTimes) {
+    this.name = name;
+    this.time = time;
+    this.added = added;
+    this.started = started;
+    this.finished = finished;
+    this.removed = removed;
+    this.waitTime = waitTime;
+    this.runTime = runTime;
+    this.activeTask = activeTask;
+    this.activeNanos = activeNanos;
+    this.oldestPendingNanos = oldestPendingNanos;
+    this.errors = errors;
+    this.lastErrorTime = lastErrorTime;
+    this.cpuTime = cpuTime;
+    this.taskCpuTimes = Collections.unmodifiableMap(taskCpuTimes);
+  }
+
+  /** @return queue name, {@code null} for tasks beyond any queue */
+  public String getName() {
+    return name;
+  }
+
+  /** @return total number of tasks added to the queue */
+  public long getEnqueued() {
+    return added;
+  }
+
+  /** @return total number of tasks that have finished */
+  public long getFinished() {
+    return finished;
+  }
+
+  /** @return total number of tasks removed from the queue without being run */
+  public long getRemoved() {
+    return removed;
+  }
+
+  /** @return number of tasks waiting in the queue */
+  public long getDepth() {
+    return Math.max(0, added - started - removed);
+  }
+
+  /** @return number of tasks being run now */
+  public long getRunning() {
+    return Math.max(0, started - finished);
+  }
+
+  /** @return time tasks spend in the queue before they start */
+  public HistogramSnapshot getWaitTime() {
+    return waitTime;
+  }
+
+  /** @return time tasks spend running */
+  public HistogramSnapshot getRunTime() {
+    return runTime;
+  }
+
+  /** @return class of the task being run now, a callable class for scheduled tasks, null if the queue is idle */
+  public Class<?> getActiveTask() {
+    return activeTask;
+  }
+
+  /** @return how long the active task has been running, in nanoseconds */
+  public long getActiveTime() {
+    return activeNanos;
+  }
+
+  /** @return how long the oldest pending task has been waiting, in nanoseconds, 0 if nothing is pending */
+  public long getOldestPendingAge() {
+    return oldestPendingNanos;
+  }
+
+  /** @return total number of tasks that have thrown an error or failed */
+  public long getErrors() {
+    return errors;
+  }
+
+  /** @return time of the last failure, as {@link android.os.SystemClock#uptimeMillis()}, 0 if there were no failures */
+  public long getLastErrorTime() {
+    return lastErrorTime;
+  }
+
+  /**
+   * Thread CPU time spent by finished tasks. Unlike the run time, does not include time
+   * tasks are blocked, e.g. on I/O.
+   * Measured only while enabled with {@link Goro#setCpuTimeTracking(boolean)}.
+   * @return total CPU time of finished tasks, in nanoseconds
+   */
+  public long getCpuTime() {
+    return cpuTime;
+  }
+
+  /** @return CPU time of finished tasks by task class, a callable class for scheduled tasks, in nanoseconds */
+  public Map<Class<?>, Long> getCpuTimeByTask() {
+    return taskCpuTimes;
+  }
+
+  /**
+   * @param previous earlier snapshot of the same queue
+   * @return CPU time spent by tasks between two snapshots, in nanoseconds
+   */
+  public long getCpuTimeSince(final QueueMetrics previous) {
+    return cpuTime - previous.cpuTime;
+  }
+
+  /**
+   * @param previous earlier snapshot of the same queue
+   * @return number of tasks that have failed between two snapshots
+   */
+  public long getErrorsSince(final QueueMetrics previous) {
+    return errors - previous.errors;
+  }
+
+  /**
+   * @param previous earlier snapshot of the same queue
+   * @return number of tasks added per second between two snapshots
+   */
+  public double getEnqueueRate(final QueueMetrics previous) {
+    long interval = time - previous.time;
+    return interval <= 0 ? 0 : (added - previous.added) * 1000.0 / interval;
+  }
+
+  @Override
+  public String toString() {
+    return name + ": enqueued=" + added + ", depth=" + getDepth() + ", running=" + getRunning()
+        + ", wait=[" + waitTime + "], run=[" + runTime + "]";
+  }
+
+}
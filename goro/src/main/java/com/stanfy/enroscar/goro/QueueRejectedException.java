@@ -0,0 +1,14 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when a queue rejects a task because of its restrictions, not because of its delegate executor.
+ */
+final class QueueRejectedException extends RejectedExecutionException {
+
+  QueueRejectedException(final String message) {
+    super(message);
+  }
+
+}
@@ -5,6 +5,7 @@ import android.os.AsyncTask;
 import android.os.Build;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -36,6 +37,43 @@ interface Queues {
    */
   void clear(String queueName);
 
+  /**
+   * Set a handler for errors thrown by tasks executed in a queue.
+   * @param queueName queue name, must not be {@code null}
+   * @param handler error handler, {@code null} to rethrow errors
+   */
+  void setErrorHandler(String queueName, QueueErrorHandler handler);
+
+  /**
+   * Set a tracker notified about tasks passing through the queues.
+   * @param tracker tasks tracker
+   */
+  void setTaskTracker(TaskTracker tracker);
+
+  /**
+   * Set a recorder of per-queue metrics. Each queue reports to its own recorder,
+   * metrics of evicted queues are removed from the recorder.
+   * @param metrics metrics recorder, {@code null} to stop recording
+   */
+  void setMetricsRecorder(MetricsRecorder metrics);
+
+  /**
+   * Apply memory pressure actions. Stateful actions that are not passed are reverted.
+   * @param actions combination of {@link MemoryPolicy} action flags
+   * @param deferrable names of deferrable queues
+   * @return number of evicted queues
+   */
+  int trimMemory(int actions, String[] deferrable);
+
+  /** @return number of threads in the pool, -1 if unknown */
+  int getPoolSize();
+
+  /**
+   * @param queueName queue name
+   * @return {@link System#nanoTime()} when the oldest pending task was added, 0 if there are no pending tasks
+   */
+  long getOldestAddTime(String queueName);
+
   /** Default implementation. */
   class Impl implements Queues {
 
@@ -54,6 +92,25 @@ interface Queues {
     /** Used threads pool. */
     private Executor delegateExecutor;
 
+    /** Executor for tasks beyond any queue. */
+    private DirectExecutor directExecutor;
+
+    /** Tasks tracker. */
+    private TaskTracker tracker = TaskTracker.NONE;
+
+    /** Per-queue metrics, null if not recorded. */
+    private MetricsRecorder metrics;
+
+    /** Core size of the shrunk threads pool, negative if the pool is not shrunk. */
+    private int originalCorePoolSize = -1;
+
+    /** Deferrable queues names. */
+    private String[] deferrable = new String[0];
+    /** Whether deferrable queues are paused. */
+    private boolean pauseDeferrable;
+    /** Whether deferrable queues reject tasks. */
+    private boolean rejectDeferrable;
+
     private static Executor getDefaultThreadPoolExecutor() {
       if (defaultThreadPoolExecutor == null) {
         Executor executor = getAsyncTaskThreadPool();
@@ -103,16 +160,33 @@ interface Queues {
         }
 
         if (queueName == null) {
-          return delegateExecutor;
+          if (tracker == TaskTracker.NONE && metrics == null) {
+            return delegateExecutor;
+          }
+          if (directExecutor == null) {
+            directExecutor = new DirectExecutor(delegateExecutor, tracker,
+                metrics != null ? metrics.direct : null);
+          }
+          return directExecutor;
         }
 
-        TaskQueueExecutor exec = executorsMap.get(queueName);
-        if (exec == null) {
-          exec = new TaskQueueExecutor(delegateExecutor);
-          executorsMap.put(queueName, exec);
+        return getQueue(queueName);
+      }
+    }
+
+    private TaskQueueExecutor getQueue(final String queueName) {
+      TaskQueueExecutor exec = executorsMap.get(queueName);
+      if (exec == null) {
+        exec = new TaskQueueExecutor(queueName, delegateExecutor);
+        exec.owner = this;
+        exec.tracker = tracker;
+        exec.metrics = metrics != null ? metrics.queue(queueName) : null;
+        if (isDeferrable(queueName)) {
+          exec.restrict(pauseDeferrable, rejectDeferrable);
         }
-        return exec;
+        executorsMap.put(queueName, exec);
       }
+      return exec;
     }
 
     @Override
@@ -125,48 +199,523 @@ interface Queues {
         exec.clear();
       }
     }
+
+    @Override
+    public void setErrorHandler(final String queueName, final QueueErrorHandler handler) {
+      if (queueName == null) {
+        throw new IllegalArgumentException("Queue name must not be null");
+      }
+      synchronized (executorsMap) {
+        if (delegateExecutor == null) {
+          delegateExecutor = getDefaultThreadPoolExecutor();
+        }
+        getQueue(queueName).errorHandler = handler;
+      }
+    }
+
+    @Override
+    public void setTaskTracker(final TaskTracker tracker) {
+      if (tracker == null) {
+        throw new IllegalArgumentException("Tracker must not be null");
+      }
+      synchronized (executorsMap) {
+        this.tracker = tracker;
+        for (TaskQueueExecutor exec : executorsMap.values()) {
+          exec.tracker = tracker;
+        }
+        directExecutor = null;
+      }
+    }
+
+    @Override
+    public void setMetricsRecorder(final MetricsRecorder metrics) {
+      synchronized (executorsMap) {
+        this.metrics = metrics;
+        for (TaskQueueExecutor exec : executorsMap.values()) {
+          exec.metrics = metrics != null ? metrics.queue(exec.name) : null;
+        }
+        directExecutor = null;
+      }
+    }
+
+    @Override
+    public int trimMemory(final int actions, final String[] deferrable) {
+      int evicted = 0;
+      synchronized (executorsMap) {
+        shrinkPool((actions & MemoryPolicy.SHRINK_POOL) != 0);
+
+        boolean pause = (actions & MemoryPolicy.PAUSE_DEFERRABLE) != 0;
+        boolean reject = (actions & MemoryPolicy.REJECT_DEFERRABLE) != 0;
+        String[] previous = this.deferrable;
+        this.deferrable = deferrable;
+        this.pauseDeferrable = pause;
+        this.rejectDeferrable = reject;
+        for (TaskQueueExecutor exec : executorsMap.values()) {
+          if (isDeferrable(exec.name)) {
+            exec.restrict(pause, reject);
+          } else if (contains(previous, exec.name)) {
+            exec.restrict(false, false);
+          }
+        }
+
+        if ((actions & MemoryPolicy.EVICT_IDLE_QUEUES) != 0) {
+          Iterator<TaskQueueExecutor> iterator = executorsMap.values().iterator();
+          while (iterator.hasNext()) {
+            TaskQueueExecutor exec = iterator.next();
+            if (exec.retire()) {
+              iterator.remove();
+              if (metrics != null && exec.metrics != null) {
+                metrics.remove(exec.name, exec.metrics);
+              }
+              evicted++;
+            }
+          }
+        }
+      }
+      return evicted;
+    }
+
+    @Override
+    public int getPoolSize() {
+      Executor executor;
+      synchronized (executorsMap) {
+        executor = delegateExecutor;
+      }
+      return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executor).getPoolSize() : -1;
+    }
+
+    @Override
+    public long getOldestAddTime(final String queueName) {
+      TaskQueueExecutor exec;
+      synchronized (executorsMap) {
+        exec = executorsMap.get(queueName);
+      }
+      return exec != null ? exec.oldestAddTime : 0;
+    }
+
+    private void shrinkPool(final boolean shrink) {
+      // AsyncTask pool is shared with the whole application, leave it alone
+      if (!(delegateExecutor instanceof ThreadPoolExecutor) || delegateExecutor == getAsyncTaskThreadPool()) {
+        return;
+      }
+      ThreadPoolExecutor pool = (ThreadPoolExecutor) delegateExecutor;
+      if (shrink && originalCorePoolSize < 0) {
+        originalCorePoolSize = pool.getCorePoolSize();
+        pool.setCorePoolSize(Math.min(1, originalCorePoolSize));
+      } else if (!shrink && originalCorePoolSize >= 0) {
+        pool.setCorePoolSize(originalCorePoolSize);
+        originalCorePoolSize = -1;
+      }
+    }
+
+    private boolean isDeferrable(final String queueName) {
+      return contains(deferrable, queueName);
+    }
+
+    private static boolean contains(final String[] names, final String name) {
+      for (String n : names) {
+        if (n.equals(name)) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
-  /** Executor for the task queue. */
-  final class TaskQueueExecutor implements Executor {
+  /** Passes tasks beyond any queue to the delegate executor, reporting them to the tracker. */
+  final class DirectExecutor implements Executor {
     /** Delegate executor. */
     final Executor delegate;
-    /** Tasks queue. */
-    final LinkedList<Runnable> tasks = new LinkedList<>();
-    /** Active task. */
-    Runnable activeTask;
+    /** Tasks tracker. */
+    final TaskTracker tracker;
+    /** Metrics of tasks beyond any queue, null if not recorded. */
+    final MetricsRecorder.QueueRecorder metrics;
+
+    DirectExecutor(final Executor delegate, final TaskTracker tracker,
+                   final MetricsRecorder.QueueRecorder metrics) {
+      this.delegate = delegate;
+      this.tracker = tracker;
+      this.metrics = metrics;
+    }
+
+    @SuppressWarnings("NullableProblems")
+    @Override
+    public void execute(final Runnable r) {
+      if (r == null) {
+        throw new IllegalArgumentException("Task must not be null");
+      }
+      tracker.onAdded(null, 1);
+      if (metrics != null) {
+        metrics.onAdded(1);
+      }
+      final long addTime = System.nanoTime();
+      try {
+        delegate.execute(new Runnable() {
+          @Override
+          public void run() {
+            long start = System.nanoTime();
+            tracker.onStarted(null, r, start - addTime);
+            long cpuStart = metrics != null ? metrics.onStarted(r, start, start - addTime) : -1;
+            boolean failed = true;
+            try {
+              r.run();
+              failed = Util.isFailed(r);
+            } finally {
+              long runTime = System.nanoTime() - start;
+              tracker.onFinished(null, r, runTime, failed);
+              if (metrics != null) {
+                metrics.onFinished(r, runTime, cpuStart, failed);
+              }
+            }
+          }
+        });
+      } catch (RuntimeException e) {
+        tracker.onRemoved(null, 1);
+        if (metrics != null) {
+          metrics.onRemoved(1);
+        }
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Executor for the task queue.
+   * Tasks are kept in a circular buffer and run one by one by this executor itself,
+   * so that adding a task allocates nothing once the buffer is large enough.
+   */
+  final class TaskQueueExecutor implements Executor, Runnable {
+    /** Initial buffer capacity, must be a power of two. */
+    private static final int INIT_CAPACITY = 8;
+
+    /** Queue name. */
+    final String name;
+    /** Delegate executor. */
+    final Executor delegate;
+    /** Handler for errors thrown by tasks. */
+    volatile QueueErrorHandler errorHandler;
+    /** Tasks tracker. */
+    volatile TaskTracker tracker = TaskTracker.NONE;
+    /** Metrics of this queue, null if not recorded. */
+    volatile MetricsRecorder.QueueRecorder metrics;
+    /** Queues that created this executor. Receives tasks once this executor is evicted. */
+    Queues owner;
+
+    /** Tasks buffer. */
+    private Runnable[] tasks = new Runnable[INIT_CAPACITY];
+    /** Times when tasks were added, in the same positions as tasks. */
+    private long[] addTimes = new long[INIT_CAPACITY];
+    /** Add time of the task returned by the last {@link #poll()}. */
+    private long polledAddTime;
+    /** Add time of the first task in the buffer, 0 if the buffer is empty. Read without the lock. */
+    volatile long oldestAddTime;
+    /** Index of the first task in the buffer. */
+    private int head;
+    /** Number of tasks in the buffer. */
+    private int size;
+    /** Whether this queue is passed to the delegate executor. */
+    private boolean active;
+    /** Whether tasks are kept in the buffer without being started. */
+    private boolean paused;
+    /** Whether new tasks are rejected. */
+    private boolean rejecting;
+    /** Whether this executor was evicted from its owner. */
+    private boolean retired;
 
     public TaskQueueExecutor(final Executor delegate)  {
+      this(null, delegate);
+    }
+
+    public TaskQueueExecutor(final String name, final Executor delegate)  {
+      this.name = name;
       this.delegate = delegate;
     }
 
     @SuppressWarnings("NullableProblems")
     @Override
-    public synchronized void execute(final Runnable r) {
-      tasks.offer(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            r.run();
-          } finally {
+    public void execute(final Runnable r) {
+      if (r == null) {
+        throw new IllegalArgumentException("Task must not be null");
+      }
+      if (!add(r, System.nanoTime())) {
+        // evicted meanwhile, pass the task to the queue that replaced this one
+        owner.getExecutor(name).execute(r);
+      }
+    }
+
+    private synchronized boolean add(final Runnable r, final long addTime) {
+      if (retired) {
+        return false;
+      }
+      if (rejecting) {
+        throw new QueueRejectedException("Queue " + name + " rejects tasks under memory pressure");
+      }
+      // reported before the task can possibly finish
+      tracker.onAdded(name, 1);
+      MetricsRecorder.QueueRecorder metrics = this.metrics;
+      if (metrics != null) {
+        metrics.onAdded(1);
+      }
+      if (size == tasks.length) {
+        grow();
+      }
+      int index = (head + size) & (tasks.length - 1);
+      tasks[index] = r;
+      addTimes[index] = addTime;
+      if (size++ == 0) {
+        oldestAddTime = addTime;
+      }
+      if (!active && !paused) {
+        try {
+          scheduleNext();
+        } catch (RuntimeException e) {
+          // the caller gets the error, the task must not be run later
+          dropLast(1);
+          throw e;
+        }
+      }
+      return true;
+    }
+
+    /** Remove the most recently added tasks. Invoked under the lock. */
+    private void dropLast(final int count) {
+      int mask = tasks.length - 1;
+      for (int i = 0; i < count; i++) {
+        tasks[(head + size - 1) & mask] = null;
+        size--;
+      }
+      oldestAddTime = size == 0 ? 0 : addTimes[head];
+      reportRemoved(count);
+    }
+
+    private void reportRemoved(final int count) {
+      tracker.onRemoved(name, count);
+      MetricsRecorder.QueueRecorder metrics = this.metrics;
+      if (metrics != null) {
+        metrics.onRemoved(count);
+      }
+    }
+
+    /**
+     * Add several tasks holding the lock once.
+     * @param tasks tasks array
+     * @param count number of tasks to take from the array
+     * @param rejectable whether the tasks are rejected like ones passed to {@link #execute(Runnable)};
+     *                   calls buffered before restrictions were applied are not
+     */
+    void executeAll(final Runnable[] tasks, final int count, final boolean rejectable) {
+      for (int i = 0; i < count; i++) {
+        if (tasks[i] == null) {
+          throw new IllegalArgumentException("Task must not be null");
+        }
+      }
+      if (count == 0) {
+        return;
+      }
+      if (!addAll(tasks, count, System.nanoTime(), rejectable)) {
+        Executor executor = owner.getExecutor(name);
+        if (executor instanceof TaskQueueExecutor) {
+          ((TaskQueueExecutor) executor).executeAll(tasks, count, rejectable);
+        } else {
+          for (int i = 0; i < count; i++) {
+            executor.execute(tasks[i]);
+          }
+        }
+      }
+    }
+
+    private synchronized boolean addAll(final Runnable[] tasks, final int count, final long addTime,
+                                        final boolean rejectable) {
+      if (retired) {
+        return false;
+      }
+      if (rejectable && rejecting) {
+        throw new QueueRejectedException("Queue " + name + " rejects tasks under memory pressure");
+      }
+      tracker.onAdded(name, count);
+      MetricsRecorder.QueueRecorder metrics = this.metrics;
+      if (metrics != null) {
+        metrics.onAdded(count);
+      }
+      while (this.tasks.length - size < count) {
+        grow();
+      }
+      int mask = this.tasks.length - 1;
+      if (size == 0) {
+        oldestAddTime = addTime;
+      }
+      for (int i = 0; i < count; i++) {
+        int index = (head + size) & mask;
+        this.tasks[index] = tasks[i];
+        addTimes[index] = addTime;
+        size++;
+      }
+      if (!active && !paused) {
+        try {
+          scheduleNext();
+        } catch (RuntimeException e) {
+          dropLast(count);
+          throw e;
+        }
+      }
+      return true;
+    }
+
+    private void grow() {
+      Runnable[] larger = new Runnable[tasks.length << 1];
+      long[] largerTimes = new long[larger.length];
+      int tail = tasks.length - head;
+      System.arraycopy(tasks, head, larger, 0, tail);
+      System.arraycopy(tasks, 0, larger, tail, head);
+      System.arraycopy(addTimes, head, largerTimes, 0, tail);
+      System.arraycopy(addTimes, 0, largerTimes, tail, head);
+      tasks = larger;
+      addTimes = largerTimes;
+      head = 0;
+    }
+
+    private synchronized Runnable poll() {
+      if (size == 0) {
+        return null;
+      }
+      Runnable r = tasks[head];
+      tasks[head] = null;
+      polledAddTime = addTimes[head];
+      head = (head + 1) & (tasks.length - 1);
+      size--;
+      oldestAddTime = size == 0 ? 0 : addTimes[head];
+      return r;
+    }
+
+    @Override
+    public void run() {
+      Runnable task = poll();
+      try {
+        if (task != null) {
+          runTask(task, polledAddTime);
+        }
+      } finally {
+        synchronized (this) {
+          if (size == 0 || paused) {
+            active = false;
+          } else {
             scheduleNext();
           }
         }
-      });
-      if (activeTask == null) {
+      }
+    }
+
+    private void runTask(final Runnable task, final long addTime) {
+      TaskTracker tracker = this.tracker;
+      MetricsRecorder.QueueRecorder metrics = this.metrics;
+      long start = System.nanoTime();
+      tracker.onStarted(name, task, start - addTime);
+      long cpuStart = metrics != null ? metrics.onStarted(task, start, start - addTime) : -1;
+      boolean failed = true;
+      try {
+        task.run();
+        failed = Util.isFailed(task);
+      } catch (Throwable e) {
+        QueueErrorHandler handler = errorHandler;
+        if (handler == null) {
+          throw e;
+        }
+        handler.onError(name, task, e);
+      } finally {
+        long runTime = System.nanoTime() - start;
+        tracker.onFinished(name, task, runTime, failed);
+        if (metrics != null) {
+          metrics.onFinished(task, runTime, cpuStart, failed);
+        }
+      }
+    }
+
+    private void scheduleNext() {
+      active = true;
+      try {
+        delegate.execute(this);
+      } catch (RuntimeException e) {
+        active = false;
+        throw e;
+      }
+    }
+
+    /**
+     * Change restrictions applied under memory pressure.
+     * @param paused whether tasks should be kept without being started
+     * @param rejecting whether new tasks should be rejected
+     */
+    synchronized void restrict(final boolean paused, final boolean rejecting) {
+      this.paused = paused;
+      this.rejecting = rejecting;
+      if (!paused && !active && size > 0) {
         scheduleNext();
       }
     }
 
-    synchronized void scheduleNext() {
-      activeTask = tasks.poll();
-      if (activeTask != null) {
-        delegate.execute(activeTask);
+    /**
+     * Mark this executor as evicted if it's idle and has no custom configuration.
+     * Tasks added later are passed to the owner.
+     * @return whether this executor was retired
+     */
+    synchronized boolean retire() {
+      if (size > 0 || active || paused || rejecting || errorHandler != null || owner == null) {
+        return false;
       }
+      retired = true;
+      return true;
     }
 
-    synchronized void clear() {
-      tasks.clear();
+    /**
+     * Remove a task that has not been started yet.
+     * @param task task to remove
+     * @return whether the task was found in this queue
+     */
+    boolean remove(final Runnable task) {
+      synchronized (this) {
+        int mask = tasks.length - 1;
+        int i = 0;
+        while (i < size && tasks[(head + i) & mask] != task) {
+          i++;
+        }
+        if (i == size) {
+          return false;
+        }
+        for (; i < size - 1; i++) {
+          tasks[(head + i) & mask] = tasks[(head + i + 1) & mask];
+          addTimes[(head + i) & mask] = addTimes[(head + i + 1) & mask];
+        }
+        tasks[(head + size - 1) & mask] = null;
+        size--;
+        oldestAddTime = size == 0 ? 0 : addTimes[head];
+      }
+      reportRemoved(1);
+      return true;
+    }
+
+    /** Remove pending tasks. Futures of removed tasks are cancelled. */
+    void clear() {
+      Runnable[] removed;
+      synchronized (this) {
+        removed = new Runnable[size];
+        for (int i = 0; i < removed.length; i++) {
+          removed[i] = tasks[head];
+          tasks[head] = null;
+          head = (head + 1) & (tasks.length - 1);
+          size--;
+        }
+        head = 0;
+        oldestAddTime = 0;
+      }
+      if (removed.length > 0) {
+        reportRemoved(removed.length);
+      }
+      for (Runnable task : removed) {
+        if (task instanceof GoroFuture) {
+          // not found in this queue anymore, so not reported twice
+          ((GoroFuture<?>) task).cancel(false);
+        }
+      }
     }
   }
 
@@ -0,0 +1,18 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Receives reports about tasks that run longer than their queue threshold.
+ * @see SlowTaskWatchdog
+ */
+public interface SlowTaskListener {
+
+  /**
+   * Invoked in the watchdog thread once per slow task, while the task is still running.
+   * @param queueName queue name, {@code null} for tasks run beyond any queue
+   * @param taskClass task class, a callable class for scheduled tasks
+   * @param elapsedMillis time the task has been running
+   * @param stackTrace stack trace of the worker thread running the task
+   */
+  void onSlowTask(String queueName, Class<?> taskClass, long elapsedMillis, StackTraceElement[] stackTrace);
+
+}
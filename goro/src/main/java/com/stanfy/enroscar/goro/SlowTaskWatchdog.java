@@ -0,0 +1,254 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports tasks that run longer than a threshold set for their queue.
+ * One sampling thread checks running tasks periodically, so a slow task is reported
+ * with a delay of up to the sampling interval.
+ * While the watchdog is attached, worker threads carry the name of the queue they run.
+ * <pre>
+ *   goro.setSlowTaskWatchdog(new SlowTaskWatchdog(listener).threshold("network", 30000));
+ * </pre>
+ * A watchdog can be attached to one Goro instance at a time.
+ * @see Goro#setSlowTaskWatchdog(SlowTaskWatchdog)
+ */
+public final class SlowTaskWatchdog {
+
+  /** Default threshold. */
+  private static final long DEFAULT_THRESHOLD = 10000;
+  /** Default sampling interval. */
+  private static final long DEFAULT_INTERVAL = 1000;
+
+  /** Listener. */
+  private final SlowTaskListener listener;
+
+  /** Thresholds by queue name, in milliseconds. */
+  private final ConcurrentHashMap<String, Long> thresholds = new ConcurrentHashMap<>();
+  /** Threshold of other queues. */
+  private volatile long defaultThreshold = DEFAULT_THRESHOLD;
+  /** Sampling interval. */
+  private volatile long interval = DEFAULT_INTERVAL;
+
+  /** Workers that have run tasks. */
+  private final CopyOnWriteArrayList<Worker> workers = new CopyOnWriteArrayList<>();
+  /** Worker of the current thread. */
+  private final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>() {
+    @Override
+    protected Worker initialValue() {
+      Worker worker = new Worker(Thread.currentThread());
+      workers.add(worker);
+      return worker;
+    }
+  };
+
+  /** Records tasks started by workers. */
+  final TaskTracker tracker = new WorkersTracker();
+
+  /** Sampling thread, null while detached. */
+  private Thread sampler;
+
+  /**
+   * @param listener receives slow task reports
+   */
+  public SlowTaskWatchdog(final SlowTaskListener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener must not be null");
+    }
+    this.listener = listener;
+  }
+
+  /**
+   * Set the threshold for tasks of a queue.
+   * @param queueName queue name
+   * @param millis threshold in milliseconds, 0 to never report tasks of this queue
+   * @return this instance
+   */
+  public SlowTaskWatchdog threshold(final String queueName, final long millis) {
+    if (queueName == null) {
+      throw new IllegalArgumentException("Queue name must not be null");
+    }
+    if (millis < 0) {
+      throw new IllegalArgumentException("Threshold must not be negative");
+    }
+    thresholds.put(queueName, millis);
+    return this;
+  }
+
+  /**
+   * Set the threshold for tasks of queues without their own threshold. 10 seconds by default.
+   * @param millis threshold in milliseconds, 0 to report only queues with their own threshold
+   * @return this instance
+   */
+  public SlowTaskWatchdog defaultThreshold(final long millis) {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Threshold must not be negative");
+    }
+    this.defaultThreshold = millis;
+    return this;
+  }
+
+  /**
+   * Set the interval between checks of running tasks. 1 second by default.
+   * @param millis interval in milliseconds
+   * @return this instance
+   */
+  public SlowTaskWatchdog interval(final long millis) {
+    if (millis <= 0) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+    this.interval = millis;
+    return this;
+  }
+
+  synchronized void start() {
+    if (sampler != null) {
+      throw new IllegalStateException("Watchdog is already attached to another Goro instance");
+    }
+    sampler = new Thread("Goro watchdog") {
+      @Override
+      public void run() {
+        try {
+          while (!isInterrupted()) {
+            Thread.sleep(interval);
+            sample();
+          }
+        } catch (InterruptedException e) {
+          // detached
+        }
+      }
+    };
+    sampler.setDaemon(true);
+    sampler.start();
+  }
+
+  synchronized void stop() {
+    if (sampler != null) {
+      sampler.interrupt();
+      sampler = null;
+    }
+  }
+
+  private long thresholdFor(final String queue) {
+    Long threshold = queue != null ? thresholds.get(queue) : null;
+    return threshold != null ? threshold : defaultThreshold;
+  }
+
+  /** Check running tasks. Invoked in the sampling thread. */
+  void sample() {
+    long now = System.nanoTime();
+    for (Worker worker : workers) {
+      if (!worker.thread.isAlive()) {
+        workers.remove(worker);
+        continue;
+      }
+      long start = worker.start;
+      if (start == 0 || start == worker.reportedStart) {
+        continue;
+      }
+      String queue = worker.queue;
+      Class<?> taskClass = worker.taskClass;
+      long threshold = thresholdFor(queue);
+      long elapsed = TimeUnit.NANOSECONDS.toMillis(now - start);
+      if (threshold == 0 || elapsed < threshold) {
+        continue;
+      }
+      StackTraceElement[] stackTrace = worker.thread.getStackTrace();
+      if (worker.start != start) {
+        // finished meanwhile, the stack belongs to another task
+        continue;
+      }
+      worker.reportedStart = start;
+      listener.onSlowTask(queue, taskClass, elapsed, stackTrace);
+    }
+  }
+
+  /** Tracks tasks run by workers. Invoked in worker threads. */
+  private final class WorkersTracker implements TaskTracker {
+
+    @Override
+    public void onAdded(final String queue, final int count) {
+      // nothing
+    }
+
+    @Override
+    public void onStarted(final String queue, final Runnable task, final long waitNanos) {
+      Worker worker = currentWorker.get();
+      // a task run by an inline executor is a part of the outer task
+      if (worker.depth++ > 0) {
+        return;
+      }
+      worker.queue = queue;
+      worker.taskClass = Util.taskClass(task);
+      long start = System.nanoTime();
+      worker.start = start != 0 ? start : 1;
+      if (queue != null) {
+        worker.rename(queue);
+      }
+    }
+
+    @Override
+    public void onFinished(final String queue, final Runnable task, final long runNanos,
+                           final boolean failed) {
+      Worker worker = currentWorker.get();
+      if (--worker.depth > 0) {
+        return;
+      }
+      worker.start = 0;
+      if (queue != null) {
+        worker.restoreName();
+      }
+    }
+
+    @Override
+    public void onRemoved(final String queue, final int count) {
+      // nothing
+    }
+  }
+
+  /** Running task of one worker thread. Written by the worker, read by the sampling thread. */
+  private static final class Worker {
+    /** Worker thread. */
+    final Thread thread;
+    /** Queue name. Written before {@link #start}. */
+    String queue;
+    /** Task class. Written before {@link #start}. */
+    Class<?> taskClass;
+    /** {@link System#nanoTime()} when the task has started, never 0 while running, 0 if the worker is idle. */
+    volatile long start;
+    /** Number of nested tasks being run. Used by the worker thread only. */
+    int depth;
+    /** Start time of the last reported task. Used by the sampling thread only. */
+    long reportedStart;
+
+    /** Thread name without a queue name. */
+    private String baseName;
+    /** Queue name included into {@link #name}. */
+    private String namedQueue;
+    /** Thread name with a queue name. Cached to avoid building a string for each task. */
+    private String name;
+
+    Worker(final Thread thread) {
+      this.thread = thread;
+    }
+
+    void rename(final String queue) {
+      String current = thread.getName();
+      // restored name is the same instance
+      //noinspection StringEquality
+      if (current != baseName || !queue.equals(namedQueue)) {
+        baseName = current;
+        namedQueue = queue;
+        name = current + " [" + queue + "]";
+      }
+      thread.setName(name);
+    }
+
+    void restoreName() {
+      thread.setName(baseName);
+    }
+  }
+
+}
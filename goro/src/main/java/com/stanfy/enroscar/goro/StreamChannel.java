@@ -0,0 +1,266 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+import static com.stanfy.enroscar.goro.AtomicFuture.IMMEDIATE;
+
+/**
+ * Bounded channel between a {@link StreamingTask} and its consumer.
+ * Scheduled in Goro as a regular task.
+ */
+final class StreamChannel<T> implements Callable<Void>, StreamingTask.Emitter<T>, TaskStream<T>, Runnable {
+
+  /** Delivery actions. */
+  private static final int NEXT = 1, COMPLETE = 2, ERROR = 3;
+
+  /** Producing task. */
+  private StreamingTask<T> task;
+
+  /** Values buffer. */
+  private final Object[] buffer;
+  /** Index of the first buffered value. */
+  private int head;
+  /** Number of buffered values. */
+  private int size;
+
+  /** Number of requested but not delivered values. */
+  private long requested;
+
+  /** Observer. */
+  private StreamObserver<T> observer;
+  /** Observer's executor. */
+  private Executor executor;
+
+  /** Whether the producer has finished. */
+  private boolean finished;
+  /** Producer failure. */
+  private Throwable error;
+  /** Whether the consumer has cancelled the stream. */
+  private boolean cancelled;
+  /** Whether the observer has got its terminal event. */
+  private boolean terminated;
+  /** Whether delivery loop is scheduled or running. */
+  private boolean draining;
+
+  /** Future of the producing task. */
+  private ObservableFuture<Void> future;
+
+  StreamChannel(final StreamingTask<T> task, final int bufferSize) {
+    if (bufferSize <= 0) {
+      throw new IllegalArgumentException("Buffer size must be positive");
+    }
+    this.task = task;
+    this.buffer = new Object[bufferSize];
+  }
+
+  void attach(final ObservableFuture<Void> future) {
+    boolean cancel;
+    synchronized (this) {
+      this.future = future;
+      cancel = cancelled;
+    }
+    if (cancel) {
+      future.cancel(true);
+    } else {
+      ProducerObserver observer = new ProducerObserver();
+      future.subscribe(observer, observer);
+    }
+  }
+
+  /** Finish the stream unless the producer has already finished. */
+  private void finish(final Throwable error) {
+    synchronized (this) {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      this.error = error;
+    }
+    signal();
+  }
+
+  // ---------- producer side ----------
+
+  @Override
+  public Void call() throws Exception {
+    StreamingTask<T> task = this.task;
+    this.task = null;
+    try {
+      task.run(this);
+    } catch (Throwable e) {
+      finish(e);
+      throw e;
+    }
+    finish(null);
+    return null;
+  }
+
+  @Override
+  public void emit(final T value) throws InterruptedException {
+    synchronized (this) {
+      while (size == buffer.length && !cancelled) {
+        wait();
+      }
+      if (cancelled) {
+        throw new CancellationException("Stream is cancelled");
+      }
+      buffer[(head + size) % buffer.length] = value;
+      size++;
+    }
+    signal();
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  // ---------- consumer side ----------
+
+  @Override
+  public void subscribe(final Executor executor, final StreamObserver<T> observer) {
+    if (executor == null || observer == null) {
+      throw new IllegalArgumentException("Executor and observer must not be null");
+    }
+    synchronized (this) {
+      if (this.observer != null) {
+        throw new IllegalStateException("Stream already has an observer");
+      }
+      this.executor = executor;
+      this.observer = observer;
+    }
+    signal();
+  }
+
+  @Override
+  public void subscribe(final StreamObserver<T> observer) {
+    subscribe(IMMEDIATE, observer);
+  }
+
+  @Override
+  public void request(final long count) {
+    if (count <= 0) {
+      throw new IllegalArgumentException("Requested count must be positive, got " + count);
+    }
+    synchronized (this) {
+      requested += count;
+      if (requested < 0) {
+        requested = Long.MAX_VALUE;
+      }
+    }
+    signal();
+  }
+
+  @Override
+  public void cancel() {
+    ObservableFuture<Void> future;
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      cancelled = true;
+      while (size > 0) {
+        buffer[head] = null;
+        head = (head + 1) % buffer.length;
+        size--;
+      }
+      future = this.future;
+      notifyAll();
+    }
+    if (future != null) {
+      future.cancel(true);
+    }
+  }
+
+  // ---------- delivery ----------
+
+  private void signal() {
+    Executor executor;
+    synchronized (this) {
+      if (observer == null || draining || terminated || cancelled) {
+        return;
+      }
+      draining = true;
+      executor = this.executor;
+    }
+    executor.execute(this);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public void run() {
+    for (;;) {
+      T value = null;
+      Throwable error = null;
+      int action;
+      synchronized (this) {
+        if (cancelled || terminated) {
+          draining = false;
+          return;
+        }
+        if (size > 0 && requested > 0) {
+          value = (T) buffer[head];
+          buffer[head] = null;
+          head = (head + 1) % buffer.length;
+          size--;
+          requested--;
+          notifyAll();
+          action = NEXT;
+        } else if (size == 0 && finished) {
+          terminated = true;
+          draining = false;
+          error = this.error;
+          action = error != null ? ERROR : COMPLETE;
+        } else {
+          draining = false;
+          return;
+        }
+      }
+
+      switch (action) {
+        case NEXT:
+          observer.onNext(value);
+          break;
+        case ERROR:
+          observer.onError(error);
+          return;
+        default:
+          observer.onComplete();
+          return;
+      }
+    }
+  }
+
+  /**
+   * Watches the producing future. A future cancelled or removed from its queue before
+   * the producer finishes terminates the stream with {@link CancellationException}.
+   */
+  private final class ProducerObserver implements FutureObserver<Void>, Executor {
+
+    @Override
+    public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+      // observers are not invoked for cancelled futures
+      command.run();
+      ObservableFuture<Void> future;
+      synchronized (StreamChannel.this) {
+        future = StreamChannel.this.future;
+      }
+      if (future != null && future.isCancelled()) {
+        finish(new CancellationException("Producer task was cancelled"));
+      }
+    }
+
+    @Override
+    public void onSuccess(final Void value) {
+      // finished by the producer
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+      // finished by the producer
+    }
+  }
+
+}
@@ -0,0 +1,15 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Consumer of values produced by a {@link StreamingTask}.
+ * @param <T> type of produced values
+ */
+public interface StreamObserver<T> {
+
+  void onNext(T value);
+
+  void onError(Throwable error);
+
+  void onComplete();
+
+}
@@ -0,0 +1,39 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Task that produces a stream of values instead of a single result.
+ * Values are passed to an {@link Emitter} and delivered to a {@link TaskStream} consumer
+ * as it requests them.
+ * @param <T> type of produced values
+ * @see Goro#stream(String, int, StreamingTask)
+ */
+public interface StreamingTask<T> {
+
+  /**
+   * Produce values. Invoked in a worker thread. The stream is completed when this method returns
+   * and fails if it throws.
+   * @param emitter channel to pass values to
+   */
+  void run(Emitter<T> emitter) throws Exception;
+
+  /**
+   * Accepts values produced by a {@link StreamingTask}.
+   * @param <T> type of produced values
+   */
+  interface Emitter<T> {
+
+    /**
+     * Pass a new value to the consumer.
+     * Blocks while the stream buffer is full, keeping the task in its queue.
+     * @param value produced value
+     * @throws InterruptedException if the worker thread is interrupted while waiting
+     * @throws java.util.concurrent.CancellationException if the stream is cancelled
+     */
+    void emit(T value) throws InterruptedException;
+
+    /** @return whether the consumer has cancelled the stream */
+    boolean isCancelled();
+
+  }
+
+}
@@ -0,0 +1,110 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+
+/**
+ * Several tasks, possibly for different queues, that are passed to {@link GoroService}
+ * with a single command intent.
+ * Tasks are marshalled into one byte array, so that the intent does not carry
+ * a separate {@code Bundle} per task.
+ * Tasks must not contain binders or file descriptors.
+ * @see GoroService#taskIntent(android.content.Context, TaskBatch)
+ */
+public final class TaskBatch {
+
+  /** Queue names. */
+  private final ArrayList<String> queues;
+
+  /** Tasks. */
+  private final ArrayList<Callable<?>> tasks;
+
+  public TaskBatch() {
+    this(10);
+  }
+
+  private TaskBatch(final int capacity) {
+    this.queues = new ArrayList<>(capacity);
+    this.tasks = new ArrayList<>(capacity);
+  }
+
+  /**
+   * Add a task to the default queue.
+   * @param task task instance
+   * @param <T> task type
+   * @return this batch
+   */
+  public <T extends Callable<?> & Parcelable> TaskBatch add(final T task) {
+    return add(Goro.DEFAULT_QUEUE, task);
+  }
+
+  /**
+   * Add a task to a queue.
+   * @param queueName queue name, {@code null} to perform the task beyond any queue
+   * @param task task instance
+   * @param <T> task type
+   * @return this batch
+   */
+  public <T extends Callable<?> & Parcelable> TaskBatch add(final String queueName, final T task) {
+    if (task == null) {
+      throw new IllegalArgumentException("Task must not be null");
+    }
+    queues.add(queueName);
+    tasks.add(task);
+    return this;
+  }
+
+  /** @return number of tasks in this batch */
+  public int size() {
+    return tasks.size();
+  }
+
+  String queue(final int index) {
+    return queues.get(index);
+  }
+
+  Callable<?> task(final int index) {
+    return tasks.get(index);
+  }
+
+  byte[] marshall() {
+    Parcel parcel = Parcel.obtain();
+    try {
+      int count = tasks.size();
+      parcel.writeInt(count);
+      for (int i = 0; i < count; i++) {
+        parcel.writeString(queues.get(i));
+        parcel.writeParcelable((Parcelable) tasks.get(i), 0);
+      }
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  static TaskBatch unmarshall(final byte[] data, final ClassLoader classLoader) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(data, 0, data.length);
+      parcel.setDataPosition(0);
+      int count = parcel.readInt();
+      TaskBatch batch = new TaskBatch(count);
+      for (int i = 0; i < count; i++) {
+        String queue = parcel.readString();
+        Parcelable task = parcel.readParcelable(classLoader);
+        if (!(task instanceof Callable)) {
+          throw new IllegalArgumentException("Task " + task + " is not a Callable");
+        }
+        batch.queues.add(queue);
+        batch.tasks.add((Callable<?>) task);
+      }
+      return batch;
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+}
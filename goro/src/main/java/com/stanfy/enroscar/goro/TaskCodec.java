@@ -0,0 +1,30 @@
+package com.stanfy.enroscar.goro;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Writes tasks of one type field by field and reads them back.
+ * Codecs are registered in {@link TaskCodecs} that is passed to {@link GoroService}.
+ * @param <T> task type
+ * @see GoroService#setup(android.content.Context, Goro, TaskCodecs)
+ */
+public interface TaskCodec<T extends Callable<?>> {
+
+  /**
+   * Write task fields.
+   * @param task task instance
+   * @param out output
+   */
+  void write(T task, DataOutput out) throws IOException;
+
+  /**
+   * Read a task written with {@link #write(Callable, DataOutput)}.
+   * @param in input
+   * @return task instance
+   */
+  T read(DataInput in) throws IOException;
+
+}
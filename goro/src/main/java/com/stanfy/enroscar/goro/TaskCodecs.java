@@ -0,0 +1,135 @@
+package com.stanfy.enroscar.goro;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+/**
+ * Registry of task codecs used by {@link GoroService} to pass tasks in command intents.
+ * An encoded task is a variable length type id followed by the fields written by its codec.
+ * <pre>
+ *   TaskCodecs codecs = new TaskCodecs()
+ *       .register(1, SyncTask.class, new SyncTask.Codec());
+ *   GoroService.setup(context, goro, codecs);
+ *   context.startService(GoroService.encodedTaskIntent(context, new SyncTask(account)));
+ * </pre>
+ */
+public final class TaskCodecs {
+
+  /** Registrations by task class. */
+  private final HashMap<Class<?>, Registration<?>> byType = new HashMap<>();
+
+  /** Registrations by type id. */
+  private final HashMap<Integer, Registration<?>> byId = new HashMap<>();
+
+  /**
+   * Register a codec.
+   * @param typeId type id written instead of the class name, must not be negative.
+   *               Ids must stay the same across application versions if intents may outlive the process.
+   * @param type task class
+   * @param codec task codec
+   * @param <T> task type
+   * @return this registry
+   */
+  public synchronized <T extends Callable<?>> TaskCodecs register(final int typeId, final Class<T> type,
+                                                                  final TaskCodec<T> codec) {
+    if (typeId < 0) {
+      throw new IllegalArgumentException("Type id must not be negative");
+    }
+    if (type == null || codec == null) {
+      throw new IllegalArgumentException("Type and codec must not be null");
+    }
+    if (byId.containsKey(typeId) || byType.containsKey(type)) {
+      throw new IllegalArgumentException("Type " + type + " or id " + typeId + " is already registered");
+    }
+    Registration<T> registration = new Registration<>(typeId, codec);
+    byId.put(typeId, registration);
+    byType.put(type, registration);
+    return this;
+  }
+
+  /**
+   * @param task task instance
+   * @return whether there is a codec for the task class
+   */
+  public synchronized boolean canEncode(final Callable<?> task) {
+    return byType.containsKey(task.getClass());
+  }
+
+  @SuppressWarnings("unchecked")
+  byte[] encode(final Callable<?> task) {
+    Registration<Callable<?>> registration;
+    synchronized (this) {
+      registration = (Registration<Callable<?>>) byType.get(task.getClass());
+    }
+    if (registration == null) {
+      throw new IllegalArgumentException("No codec registered for " + task.getClass());
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      writeVarInt(out, registration.typeId);
+      registration.codec.write(task, out);
+      out.flush();
+    } catch (IOException e) {
+      throw new GoroException("Cannot encode " + task, e);
+    }
+    return bytes.toByteArray();
+  }
+
+  Callable<?> decode(final byte[] data) {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    try {
+      int typeId = readVarInt(in);
+      Registration<?> registration;
+      synchronized (this) {
+        registration = byId.get(typeId);
+      }
+      if (registration == null) {
+        throw new GoroException("No codec registered for type id " + typeId);
+      }
+      return registration.codec.read(in);
+    } catch (IOException e) {
+      throw new GoroException("Cannot decode a task", e);
+    }
+  }
+
+  private static void writeVarInt(final DataOutputStream out, final int value) throws IOException {
+    int v = value;
+    while ((v & ~0x7F) != 0) {
+      out.writeByte((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    out.writeByte(v);
+  }
+
+  private static int readVarInt(final DataInputStream in) throws IOException {
+    int result = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = in.readUnsignedByte();
+      result |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed type id");
+  }
+
+  /** Registered codec. */
+  private static final class Registration<T extends Callable<?>> {
+    /** Type id. */
+    final int typeId;
+    /** Codec. */
+    final TaskCodec<T> codec;
+
+    Registration(final int typeId, final TaskCodec<T> codec) {
+      this.typeId = typeId;
+      this.codec = codec;
+    }
+  }
+
+}
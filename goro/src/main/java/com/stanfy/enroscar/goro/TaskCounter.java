@@ -0,0 +1,111 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts tasks that are added to queues and neither finished nor removed yet.
+ * Invokes a busy callback each time the count reaches a threshold, one by default,
+ * and an idle callback each time it drops to zero.
+ * Also measures how long tasks run on average.
+ */
+final class TaskCounter implements TaskTracker {
+
+  /** Tasks in flight. */
+  private final AtomicInteger count = new AtomicInteger();
+
+  /** Invoked when there are no more tasks in flight. */
+  private volatile Runnable idleCallback;
+  /** Invoked when the count reaches the busy threshold. */
+  private volatile Runnable busyCallback;
+  /** Count that triggers the busy callback. */
+  private volatile int busyThreshold = 1;
+
+  /** Number of finished tasks. */
+  private final AtomicLong finished = new AtomicLong();
+  /** Total running time of finished tasks. */
+  private final AtomicLong runningNanos = new AtomicLong();
+
+  /** @return number of tasks in flight */
+  int get() {
+    return count.get();
+  }
+
+  /**
+   * Set a callback invoked on the thread that has finished or removed the last task in flight.
+   * @param callback idle callback, may be null
+   */
+  void setIdleCallback(final Runnable callback) {
+    this.idleCallback = callback;
+  }
+
+  /**
+   * Set a callback invoked on the thread that has added tasks so that their count reaches the busy threshold.
+   * @param callback busy callback, may be null
+   */
+  void setBusyCallback(final Runnable callback) {
+    this.busyCallback = callback;
+  }
+
+  /**
+   * @param threshold number of tasks in flight that triggers the busy callback, positive
+   */
+  void setBusyThreshold(final int threshold) {
+    if (threshold <= 0) {
+      throw new IllegalArgumentException("Threshold must be positive");
+    }
+    this.busyThreshold = threshold;
+  }
+
+  /** @return number of tasks finished so far */
+  long getFinished() {
+    return finished.get();
+  }
+
+  /** @return average running time of finished tasks in milliseconds, 0 if nothing is finished */
+  long getAverageMillis() {
+    long n = finished.get();
+    return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(runningNanos.get() / n);
+  }
+
+  @Override
+  public void onAdded(final String queue, final int count) {
+    int previous = this.count.getAndAdd(count);
+    int threshold = busyThreshold;
+    if (previous < threshold && previous + count >= threshold) {
+      Runnable callback = busyCallback;
+      if (callback != null) {
+        callback.run();
+      }
+    }
+  }
+
+  @Override
+  public void onStarted(final String queue, final Runnable task, final long waitNanos) {
+    // nothing
+  }
+
+  @Override
+  public void onFinished(final String queue, final Runnable task, final long runNanos,
+                         final boolean failed) {
+    runningNanos.addAndGet(runNanos);
+    finished.incrementAndGet();
+    release(1);
+  }
+
+  @Override
+  public void onRemoved(final String queue, final int count) {
+    release(count);
+  }
+
+  private void release(final int n) {
+    if (count.addAndGet(-n) == 0) {
+      Runnable callback = idleCallback;
+      if (callback != null) {
+        callback.run();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,31 @@
+package com.stanfy.enroscar.goro;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Consumer side of a scheduled {@link StreamingTask}.
+ * Values are delivered to the subscribed observer only after they are requested with {@link #request(long)}.
+ * A producer that gets ahead of the consumer is suspended once the stream buffer is full.
+ * @param <T> type of produced values
+ */
+public interface TaskStream<T> {
+
+  /**
+   * Set the stream observer. Only one observer can be subscribed.
+   * @param executor executor used to notify the observer
+   * @param observer stream observer
+   */
+  void subscribe(Executor executor, StreamObserver<T> observer);
+
+  void subscribe(StreamObserver<T> observer);
+
+  /**
+   * Request more values.
+   * @param count number of values the observer is ready to receive, must be positive
+   */
+  void request(long count);
+
+  /** Stop the stream: drop buffered values and cancel the producing task. */
+  void cancel();
+
+}
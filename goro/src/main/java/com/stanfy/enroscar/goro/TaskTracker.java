@@ -0,0 +1,53 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Observes tasks going through queues.
+ * Methods are invoked on threads that add, run or remove tasks and must be fast.
+ */
+interface TaskTracker {
+
+  /** Tracker that does nothing. */
+  TaskTracker NONE = new TaskTracker() {
+    @Override
+    public void onAdded(final String queue, final int count) { }
+    @Override
+    public void onStarted(final String queue, final Runnable task, final long waitNanos) { }
+    @Override
+    public void onFinished(final String queue, final Runnable task, final long runNanos,
+                           final boolean failed) { }
+    @Override
+    public void onRemoved(final String queue, final int count) { }
+  };
+
+  /**
+   * Tasks are added to a queue.
+   * @param queue queue name, {@code null} for tasks beyond any queue
+   * @param count number of added tasks
+   */
+  void onAdded(String queue, int count);
+
+  /**
+   * A task is about to run. Invoked on the worker thread.
+   * @param queue queue name, {@code null} for tasks beyond any queue
+   * @param task task instance
+   * @param waitNanos time the task has spent in the queue
+   */
+  void onStarted(String queue, Runnable task, long waitNanos);
+
+  /**
+   * A task has finished, either normally or with an error. Invoked on the worker thread.
+   * @param queue queue name, {@code null} for tasks beyond any queue
+   * @param task task instance
+   * @param runNanos time the task has been running
+   * @param failed whether the task has thrown an error or its future has failed
+   */
+  void onFinished(String queue, Runnable task, long runNanos, boolean failed);
+
+  /**
+   * Tasks are removed from a queue without being run.
+   * @param queue queue name
+   * @param count number of removed tasks
+   */
+  void onRemoved(String queue, int count);
+
+}
@@ -0,0 +1,214 @@
+package com.stanfy.enroscar.goro;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Process;
+import android.os.Trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a timeline of tasks: when each task was scheduled, started and finished,
+ * its queue, thread and class. Keeps a fixed number of recent events.
+ * The timeline can be written as Chrome trace-event JSON and opened
+ * in <a href="https://ui.perfetto.dev">Perfetto</a> or {@code chrome://tracing}.
+ * On API 18+ task execution is also wrapped into {@link Trace} sections, so that tasks appear in systrace.
+ * Recording does not lock and does not allocate.
+ * <pre>
+ *   TimelineRecorder timeline = new TimelineRecorder(4096);
+ *   goro.setTimelineRecorder(timeline);
+ *   ...
+ *   timeline.writeTrace(new FileWriter(file));
+ * </pre>
+ * @see Goro#setTimelineRecorder(TimelineRecorder)
+ */
+public final class TimelineRecorder {
+
+  /** Event kinds. */
+  private static final int STARTED = 1, FINISHED = 2;
+
+  /** Maximum length of a trace section name. */
+  private static final int MAX_SECTION_NAME = 127;
+
+  /** Whether trace sections are supported. */
+  private static final boolean TRACE_SECTIONS =
+      Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+  /** Recorded events. */
+  private final EventRing events;
+
+  /** Records tasks run by workers. */
+  final TaskTracker tracker = new TimelineTracker();
+
+  /**
+   * @param capacity maximum number of recorded events, two events per task, rounded up to a power of two
+   */
+  public TimelineRecorder(final int capacity) {
+    this.events = new EventRing(capacity);
+  }
+
+  /**
+   * Write recorded events as Chrome trace-event JSON.
+   * Each task is shown as a slice on its worker thread, time spent in a queue is shown as an async slice.
+   * @param out output, not closed by this method
+   * @throws IOException if the output fails
+   */
+  public void writeTrace(final Writer out) throws IOException {
+    List<EventRing.Event> events = this.events.snapshot();
+    String pid = String.valueOf(Process.myPid());
+    HashMap<Integer, String> threads = new HashMap<>();
+
+    out.write("{\"traceEvents\":[");
+    boolean first = true;
+    for (EventRing.Event event : events) {
+      threads.put(event.threadId, event.threadName);
+      String tid = String.valueOf(event.threadId);
+      if (!first) {
+        out.write(',');
+      }
+      first = false;
+      if (event.kind == STARTED) {
+        String name = event.task.getName();
+        String queue = event.queue != null ? event.queue : "";
+        long wait = event.value1;
+        // time in the queue
+        writeEvent(out, name, "wait", "b", event.time - wait, pid, tid, event.seq, queue);
+        out.write(',');
+        writeEvent(out, name, "wait", "e", event.time, pid, tid, event.seq, queue);
+        out.write(',');
+        writeEvent(out, name, "task", "B", event.time, pid, tid, -1, queue);
+      } else {
+        writeEvent(out, null, "task", "E", event.time, pid, tid, -1, null);
+      }
+    }
+    for (Map.Entry<Integer, String> thread : threads.entrySet()) {
+      if (!first) {
+        out.write(',');
+      }
+      first = false;
+      out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":");
+      out.write(pid);
+      out.write(",\"tid\":");
+      out.write(String.valueOf(thread.getKey()));
+      out.write(",\"args\":{\"name\":");
+      writeString(out, thread.getValue());
+      out.write("}}");
+    }
+    out.write("],\"displayTimeUnit\":\"ms\"}");
+    out.flush();
+  }
+
+  private static void writeEvent(final Writer out, final String name, final String category,
+                                 final String phase, final long nanos, final String pid,
+                                 final String tid, final long id, final String queue)
+      throws IOException {
+    out.write('{');
+    if (name != null) {
+      out.write("\"name\":");
+      writeString(out, name);
+      out.write(',');
+    }
+    out.write("\"cat\":\"");
+    out.write(category);
+    out.write("\",\"ph\":\"");
+    out.write(phase);
+    out.write("\",\"ts\":");
+    out.write(String.valueOf(TimeUnit.NANOSECONDS.toMicros(nanos)));
+    out.write(",\"pid\":");
+    out.write(pid);
+    out.write(",\"tid\":");
+    out.write(tid);
+    if (id >= 0) {
+      out.write(",\"id\":");
+      out.write(String.valueOf(id));
+    }
+    if (queue != null) {
+      out.write(",\"args\":{\"queue\":");
+      writeString(out, queue);
+      out.write('}');
+    }
+    out.write('}');
+  }
+
+  private static void writeString(final Writer out, final String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.write('\\');
+        out.write(c);
+      } else if (c < 0x20) {
+        out.write(String.format("\\u%04x", (int) c));
+      } else {
+        out.write(c);
+      }
+    }
+    out.write('"');
+  }
+
+  @SuppressLint("NewApi")
+  private static void beginSection(final Class<?> taskClass) {
+    String name = taskClass.getName();
+    Trace.beginSection(name.length() > MAX_SECTION_NAME ? name.substring(0, MAX_SECTION_NAME) : name);
+  }
+
+  @SuppressLint("NewApi")
+  private static void endSection() {
+    Trace.endSection();
+  }
+
+  /**
+   * Records tasks run by workers. Invoked in worker threads.
+   * The tracker can be attached or detached while a task is running,
+   * so only sections opened by this tracker are ended.
+   */
+  private final class TimelineTracker implements TaskTracker {
+
+    /** Number of trace sections opened by this tracker in the current thread. */
+    private final ThreadLocal<int[]> openSections = new ThreadLocal<int[]>() {
+      @Override
+      protected int[] initialValue() {
+        return new int[1];
+      }
+    };
+
+    @Override
+    public void onAdded(final String queue, final int count) {
+      // schedule time is derived from the wait time
+    }
+
+    @Override
+    public void onStarted(final String queue, final Runnable task, final long waitNanos) {
+      Class<?> taskClass = Util.taskClass(task);
+      events.record(STARTED, queue, taskClass, System.nanoTime(), waitNanos, 0);
+      if (TRACE_SECTIONS) {
+        beginSection(taskClass);
+        openSections.get()[0]++;
+      }
+    }
+
+    @Override
+    public void onFinished(final String queue, final Runnable task, final long runNanos,
+                           final boolean failed) {
+      if (TRACE_SECTIONS) {
+        int[] open = openSections.get();
+        if (open[0] > 0) {
+          open[0]--;
+          endSection();
+        }
+      }
+      events.record(FINISHED, queue, null, System.nanoTime(), runNanos, failed ? 1 : 0);
+    }
+
+    @Override
+    public void onRemoved(final String queue, final int count) {
+      // nothing
+    }
+  }
+
+}
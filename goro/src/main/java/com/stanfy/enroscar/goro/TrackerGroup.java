@@ -0,0 +1,66 @@
+package com.stanfy.enroscar.goro;
+
+/**
+ * Passes task events to several trackers.
+ * Trackers can be added and removed while tasks are running.
+ */
+final class TrackerGroup implements TaskTracker {
+
+  /** Trackers. Replaced on each change. */
+  private volatile TaskTracker[] trackers;
+
+  TrackerGroup(final TaskTracker... trackers) {
+    this.trackers = trackers.clone();
+  }
+
+  synchronized void add(final TaskTracker tracker) {
+    TaskTracker[] current = trackers;
+    TaskTracker[] updated = new TaskTracker[current.length + 1];
+    System.arraycopy(current, 0, updated, 0, current.length);
+    updated[current.length] = tracker;
+    trackers = updated;
+  }
+
+  synchronized void remove(final TaskTracker tracker) {
+    TaskTracker[] current = trackers;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == tracker) {
+        TaskTracker[] updated = new TaskTracker[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+        trackers = updated;
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void onAdded(final String queue, final int count) {
+    for (TaskTracker tracker : trackers) {
+      tracker.onAdded(queue, count);
+    }
+  }
+
+  @Override
+  public void onStarted(final String queue, final Runnable task, final long waitNanos) {
+    for (TaskTracker tracker : trackers) {
+      tracker.onStarted(queue, task, waitNanos);
+    }
+  }
+
+  @Override
+  public void onFinished(final String queue, final Runnable task, final long runNanos,
+                         final boolean failed) {
+    for (TaskTracker tracker : trackers) {
+      tracker.onFinished(queue, task, runNanos, failed);
+    }
+  }
+
+  @Override
+  public void onRemoved(final String queue, final int count) {
+    for (TaskTracker tracker : trackers) {
+      tracker.onRemoved(queue, count);
+    }
+  }
+
+}
@@ -13,4 +13,20 @@ final class Util {
     return Looper.myLooper() == Looper.getMainLooper();
   }
 
+  /**
+   * @param task task passed to a queue
+   * @return class of the callable for scheduled tasks, class of the runnable otherwise
+   */
+  static Class<?> taskClass(final Runnable task) {
+    return task instanceof GoroFuture ? ((GoroFuture<?>) task).taskClass() : task.getClass();
+  }
+
+  /**
+   * @param task task passed to a queue that has returned normally
+   * @return whether the task is a scheduled task that has failed
+   */
+  static boolean isFailed(final Runnable task) {
+    return task instanceof AtomicFuture && ((AtomicFuture<?>) task).state() == AtomicFuture.FAILURE;
+  }
+
 }
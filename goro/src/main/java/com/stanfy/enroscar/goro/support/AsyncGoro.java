@@ -1,5 +1,8 @@
 package com.stanfy.enroscar.goro.support;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import com.stanfy.enroscar.async.Async;
 import com.stanfy.enroscar.async.AsyncObserver;
 import com.stanfy.enroscar.goro.FutureObserver;
@@ -17,6 +20,9 @@ public class AsyncGoro {
   /** Goro instance. */
   private final Goro goro;
 
+  /** Releases retained results. */
+  private final Handler handler = new Handler(Looper.getMainLooper());
+
   public AsyncGoro(final Goro goro) {
     this.goro = goro;
   }
@@ -38,6 +44,32 @@ public class AsyncGoro {
     return schedule(Goro.DEFAULT_QUEUE, task);
   }
 
+  /**
+   * Schedule a task that is shared by replicas of the returned {@code Async}.
+   * Replicas subscribe to a single execution instead of scheduling the task again.
+   * The execution is cancelled when the last replica is cancelled.
+   * A successful result is retained for the specified time: a replica subscribing later
+   * schedules the task again. Errors and cancellations are not retained: a replica subscribing
+   * after the task has failed or has been cancelled schedules it again.
+   * @param queue queue name
+   * @param task task instance
+   * @param retainMillis time to keep the result after the task is finished, in milliseconds
+   * @see Goro#schedule(String, Callable)
+   */
+  public <T> Async<T> scheduleShared(final String queue, final Callable<T> task, final long retainMillis) {
+    if (retainMillis < 0) {
+      throw new IllegalArgumentException("Retain time must not be negative");
+    }
+    return new SharedAsync<>(new SharedExecution<>(queue, task, retainMillis));
+  }
+
+  /**
+   * @see #scheduleShared(String, Callable, long)
+   */
+  public <T> Async<T> scheduleShared(final Callable<T> task, final long retainMillis) {
+    return scheduleShared(Goro.DEFAULT_QUEUE, task, retainMillis);
+  }
+
   /** Implementation. */
   private final class GoroAsync<T> implements Async<T> {
 
@@ -101,4 +133,140 @@ public class AsyncGoro {
 
   }
 
+  /** Execution shared by replicas. Guarded by itself. Runs to release an expired result. */
+  private final class SharedExecution<T> implements FutureObserver<T>, Runnable {
+
+    /** Queue. */
+    final String queue;
+    /** Task. */
+    final Callable<T> task;
+    /** Time to keep the result. */
+    final long retainMillis;
+
+    /** Current future, null if there is none or its result has expired. */
+    ObservableFuture<T> future;
+    /** Number of replicas that are not cancelled. */
+    int refs;
+
+    SharedExecution(final String queue, final Callable<T> task, final long retainMillis) {
+      this.queue = queue;
+      this.task = task;
+      this.retainMillis = retainMillis;
+    }
+
+    /** @return current future, scheduling the task if there is no future or the result is expired */
+    ObservableFuture<T> acquireFuture() {
+      ObservableFuture<T> future;
+      synchronized (this) {
+        // a successful result is released when it expires, errors are not retained
+        if (this.future != null && (!this.future.isDone() || isSucceeded(this.future))) {
+          return this.future;
+        }
+        future = goro.schedule(queue, task);
+        this.future = future;
+      }
+      future.subscribe(this);
+      return future;
+    }
+
+    private boolean isSucceeded(final ObservableFuture<T> future) {
+      if (future.isCancelled()) {
+        return false;
+      }
+      try {
+        future.get();
+        return true;
+      } catch (Exception e) {
+        return false;
+      }
+    }
+
+    void release() {
+      ObservableFuture<T> future;
+      synchronized (this) {
+        refs--;
+        future = this.future;
+        if (refs > 0 || future == null || future.isDone()) {
+          return;
+        }
+        this.future = null;
+      }
+      future.cancel(true);
+    }
+
+    @Override
+    public void onSuccess(final T value) {
+      handler.removeCallbacks(this);
+      handler.postDelayed(this, retainMillis);
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+      // not retained: the next replica schedules the task again
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (future != null && future.isDone()) {
+          future = null;
+        }
+      }
+    }
+  }
+
+  /** Replica of a shared execution. */
+  private final class SharedAsync<T> implements Async<T> {
+
+    /** Shared execution. */
+    private final SharedExecution<T> execution;
+
+    /** Cancel flag. */
+    private volatile boolean canceled;
+
+    SharedAsync(final SharedExecution<T> execution) {
+      this.execution = execution;
+      synchronized (execution) {
+        execution.refs++;
+      }
+    }
+
+    @Override
+    public SharedAsync<T> replicate() {
+      return new SharedAsync<>(execution);
+    }
+
+    @Override
+    public void subscribe(final AsyncObserver<T> observer) {
+      if (canceled) {
+        return;
+      }
+      execution.acquireFuture().subscribe(new FutureObserver<T>() {
+        @Override
+        public void onSuccess(final T value) {
+          if (!canceled) {
+            observer.onResult(value);
+          }
+        }
+        @Override
+        public void onError(final Throwable error) {
+          if (!canceled) {
+            observer.onError(error);
+          }
+        }
+      });
+    }
+
+    @Override
+    public void cancel() {
+      synchronized (execution) {
+        if (canceled) {
+          return;
+        }
+        canceled = true;
+      }
+      execution.release();
+    }
+  }
+
 }
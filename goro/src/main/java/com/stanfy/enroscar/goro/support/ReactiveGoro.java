@@ -0,0 +1,326 @@
+package com.stanfy.enroscar.goro.support;
+
+import com.stanfy.enroscar.goro.FutureObserver;
+import com.stanfy.enroscar.goro.Goro;
+import com.stanfy.enroscar.goro.ObservableFuture;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Integration point for Reactive Streams.
+ * Maps a stream of items onto tasks scheduled in a Goro queue.
+ */
+public class ReactiveGoro {
+
+  /** Goro instance. */
+  private final Goro goro;
+
+  public ReactiveGoro(final Goro goro) {
+    this.goro = goro;
+  }
+
+  /** @return wrapped {@link Goro} instance */
+  public Goro wrappedGoro() { return goro; }
+
+  /**
+   * Create a publisher that schedules a task for each item of the upstream and emits task results
+   * in the order of items.
+   * At most {@code maxInFlight} tasks are either scheduled or finished and waiting for the subscriber's
+   * request. Further items are requested from the upstream only when results are emitted.
+   * A task error and an upstream error cancel pending tasks and are passed to the subscriber.
+   * A task future cancelled from outside fails the stream with {@link CancellationException}.
+   * Results are emitted in worker threads.
+   * @param queue queue name, {@code null} to run up to {@code maxInFlight} tasks in parallel
+   * @param maxInFlight maximum number of tasks in flight
+   * @param upstream source of items
+   * @param factory creates a task for an item
+   * @param <T> item type
+   * @param <R> result type
+   * @return results publisher, each subscriber subscribes to the upstream on its own
+   * @see Goro#schedule(String, Callable)
+   */
+  public <T, R> Publisher<R> map(final String queue, final int maxInFlight,
+                                 final Publisher<? extends T> upstream,
+                                 final TaskFactory<? super T, R> factory) {
+    if (maxInFlight <= 0) {
+      throw new IllegalArgumentException("Max number of tasks in flight must be positive");
+    }
+    if (upstream == null || factory == null) {
+      throw new IllegalArgumentException("Upstream and factory must not be null");
+    }
+    return new Publisher<R>() {
+      @Override
+      public void subscribe(final Subscriber<? super R> subscriber) {
+        if (subscriber == null) {
+          throw new NullPointerException("Subscriber must not be null");
+        }
+        upstream.subscribe(new MapSubscriber<T, R>(goro, queue, maxInFlight, factory, subscriber));
+      }
+    };
+  }
+
+  /**
+   * Creates tasks for stream items.
+   * @param <T> item type
+   * @param <R> result type
+   */
+  public interface TaskFactory<T, R> {
+    /**
+     * @param item stream item
+     * @return task that processes the item
+     */
+    Callable<R> create(T item);
+  }
+
+  /** Subscribes to the upstream and serves the downstream subscriber. */
+  private static final class MapSubscriber<T, R> implements Subscriber<T>, Subscription {
+
+    /** Goro instance. */
+    private final Goro goro;
+    /** Queue name. */
+    private final String queue;
+    /** Maximum number of tasks in flight. */
+    private final int maxInFlight;
+    /** Tasks factory. */
+    private final TaskFactory<? super T, R> factory;
+    /** Downstream subscriber. */
+    private final Subscriber<? super R> downstream;
+
+    /** Tasks in order of items. */
+    private final ConcurrentLinkedQueue<Slot<R>> slots = new ConcurrentLinkedQueue<>();
+    /** Items requested by the downstream and not emitted yet. */
+    private final AtomicLong requested = new AtomicLong();
+    /** Drain loop guard. */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /** Upstream subscription. */
+    private volatile Subscription upstream;
+    /** Whether upstream has finished. */
+    private volatile boolean upstreamDone;
+    /** Upstream or request error, terminates the stream without waiting for pending tasks. */
+    private volatile Throwable error;
+    /** Whether the downstream has cancelled or the stream is terminated. */
+    private volatile boolean cancelled;
+
+    MapSubscriber(final Goro goro, final String queue, final int maxInFlight,
+                  final TaskFactory<? super T, R> factory, final Subscriber<? super R> downstream) {
+      this.goro = goro;
+      this.queue = queue;
+      this.maxInFlight = maxInFlight;
+      this.factory = factory;
+      this.downstream = downstream;
+    }
+
+    @Override
+    public void onSubscribe(final Subscription s) {
+      if (upstream != null) {
+        s.cancel();
+        return;
+      }
+      upstream = s;
+      downstream.onSubscribe(this);
+      s.request(maxInFlight);
+    }
+
+    @Override
+    public void onNext(final T item) {
+      if (cancelled || upstreamDone) {
+        return;
+      }
+      Slot<R> slot = new Slot<>(this);
+      try {
+        Callable<R> task = factory.create(item);
+        if (task == null) {
+          throw new NullPointerException("Factory " + factory + " returned null for " + item);
+        }
+        slot.future = goro.schedule(queue, task);
+      } catch (Throwable e) {
+        upstream.cancel();
+        upstreamDone = true;
+        slot.fail(e);
+      }
+      // added before the outcome can be reported
+      slots.offer(slot);
+      if (slot.future == null || cancelled) {
+        // cancelAll might have missed the new slot: drain cancels it
+        drain();
+        return;
+      }
+      slot.future.subscribe(slot, slot);
+    }
+
+    @Override
+    public void onError(final Throwable e) {
+      error = e;
+      upstreamDone = true;
+      drain();
+    }
+
+    @Override
+    public void onComplete() {
+      upstreamDone = true;
+      drain();
+    }
+
+    @Override
+    public void request(final long n) {
+      if (n <= 0) {
+        upstream.cancel();
+        onError(new IllegalArgumentException("Requested " + n + " items, must be positive"));
+        return;
+      }
+      long current;
+      do {
+        current = requested.get();
+        if (current == Long.MAX_VALUE) {
+          return;
+        }
+      } while (!requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      if (!cancelled) {
+        cancelled = true;
+        upstream.cancel();
+        drain();
+      }
+    }
+
+    /** Emits finished results in order. Runs in one thread at a time. */
+    void drain() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        if (cancelled) {
+          cancelAll();
+          return;
+        }
+        if (error != null) {
+          terminate(error);
+          return;
+        }
+
+        long r = requested.get();
+        long emitted = 0;
+        while (true) {
+          Slot<R> head = slots.peek();
+          if (head == null || !head.done) {
+            break;
+          }
+          if (head.error != null) {
+            // errors do not wait for requests
+            upstream.cancel();
+            terminate(head.error);
+            return;
+          }
+          if (emitted == r) {
+            break;
+          }
+          slots.poll();
+          R value = head.value;
+          head.value = null;
+          downstream.onNext(value);
+          emitted++;
+          if (cancelled) {
+            cancelAll();
+            return;
+          }
+        }
+
+        if (upstreamDone && slots.isEmpty()) {
+          cancelled = true;
+          downstream.onComplete();
+          return;
+        }
+        if (emitted > 0) {
+          if (r != Long.MAX_VALUE) {
+            requested.addAndGet(-emitted);
+          }
+          if (!upstreamDone) {
+            // emitted tasks free their slots
+            upstream.request(emitted);
+          }
+        }
+        missed = wip.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void terminate(final Throwable e) {
+      cancelAll();
+      downstream.onError(e);
+    }
+
+    private void cancelAll() {
+      cancelled = true;
+      Slot<R> slot;
+      while ((slot = slots.poll()) != null) {
+        if (slot.future != null) {
+          slot.future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /**
+   * Task in flight.
+   * Also serves as the executor of its observer: it's invoked for any outcome, including cancellation
+   * that observers are not told about.
+   */
+  private static final class Slot<R> implements FutureObserver<R>, Executor {
+    /** Owner. */
+    private final MapSubscriber<?, R> owner;
+    /** Task future, null if the task could not be created. */
+    ObservableFuture<R> future;
+    /** Task result. */
+    R value;
+    /** Task error. */
+    Throwable error;
+    /** Whether the outcome is known. Written after the outcome. */
+    volatile boolean done;
+
+    Slot(final MapSubscriber<?, R> owner) {
+      this.owner = owner;
+    }
+
+    void fail(final Throwable e) {
+      error = e;
+      done = true;
+    }
+
+    @Override
+    public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+      command.run();
+      if (!done && future.isCancelled()) {
+        onError(new CancellationException("Task was cancelled"));
+      }
+    }
+
+    @Override
+    public void onSuccess(final R value) {
+      this.value = value;
+      done = true;
+      owner.drain();
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+      this.error = error;
+      done = true;
+      owner.drain();
+    }
+  }
+
+}
@@ -3,18 +3,23 @@ package com.stanfy.enroscar.goro.support;
 import com.stanfy.enroscar.goro.FutureObserver;
 import com.stanfy.enroscar.goro.Goro;
 import com.stanfy.enroscar.goro.ObservableFuture;
+import com.stanfy.enroscar.goro.StreamObserver;
+import com.stanfy.enroscar.goro.StreamingTask;
+import com.stanfy.enroscar.goro.TaskStream;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import rx.Observable;
+import rx.Producer;
 import rx.Scheduler;
 import rx.Subscriber;
 import rx.Subscription;
 import rx.functions.Action0;
-import rx.subscriptions.BooleanSubscription;
+import rx.plugins.RxJavaPlugins;
+import rx.subscriptions.Subscriptions;
 
 /**
  * Integration point for RxJava.
@@ -40,25 +45,89 @@ public class RxGoro {
   }
 
   /**
+   * Schedule the task for each subscriber: every subscription gets its own execution.
+   * Unsubscription cancels the execution and removes the task from its queue if it's not started yet.
    * @see Goro#schedule(String, Callable)
+   * @see #scheduleShared(String, Callable)
    */
   public <T> Observable<T> schedule(final String queue, final Callable<T> task) {
     return Observable.create(new Observable.OnSubscribe<T>() {
       @Override
       public void call(final Subscriber<? super T> subscriber) {
-        goro.schedule(queue, task).subscribe(new FutureObserver<T>() {
+        final ObservableFuture<T> future = goro.schedule(queue, task);
+        subscriber.add(Subscriptions.create(new Action0() {
           @Override
-          public void onSuccess(final T value) {
-            if (!subscriber.isUnsubscribed()) {
-              subscriber.onNext(value);
-              subscriber.onCompleted();
-            }
+          public void call() {
+            future.cancel(true);
+          }
+        }));
+        future.subscribe(new SubscriberObserver<>(subscriber));
+      }
+    });
+  }
+
+  /**
+   * @see #scheduleShared(String, Callable)
+   */
+  public <T> Observable<T> scheduleShared(final Callable<T> task) {
+    return scheduleShared(Goro.DEFAULT_QUEUE, task);
+  }
+
+  /**
+   * Schedule the task once for all the subscribers that come while it's in flight.
+   * A subscription made after the execution is finished schedules the task again.
+   * The execution is cancelled when all its subscribers unsubscribe.
+   * @see Goro#schedule(String, Callable)
+   */
+  public <T> Observable<T> scheduleShared(final String queue, final Callable<T> task) {
+    return Observable.create(new SharedExecution<>(goro, queue, task));
+  }
+
+  /**
+   * @see Goro#stream(String, StreamingTask)
+   */
+  public <T> Observable<T> stream(final String queue, final StreamingTask<T> task) {
+    return stream(queue, Goro.DEFAULT_STREAM_BUFFER_SIZE, task);
+  }
+
+  /**
+   * Schedule a streaming task for each subscriber.
+   * Subscriber's requests are passed to the task stream, so a slow subscriber suspends the producer.
+   * Unsubscription cancels the stream.
+   * @see Goro#stream(String, int, StreamingTask)
+   */
+  public <T> Observable<T> stream(final String queue, final int bufferSize, final StreamingTask<T> task) {
+    return Observable.create(new Observable.OnSubscribe<T>() {
+      @Override
+      public void call(final Subscriber<? super T> subscriber) {
+        final TaskStream<T> stream = goro.stream(queue, bufferSize, task);
+        subscriber.add(Subscriptions.create(new Action0() {
+          @Override
+          public void call() {
+            stream.cancel();
+          }
+        }));
+        stream.subscribe(new StreamObserver<T>() {
+          @Override
+          public void onNext(final T value) {
+            subscriber.onNext(value);
+          }
+
+          @Override
+          public void onError(final Throwable error) {
+            subscriber.onError(error);
           }
 
           @Override
-          public void onError(Throwable error) {
-            if (!subscriber.isUnsubscribed()) {
-              subscriber.onError(error);
+          public void onComplete() {
+            subscriber.onCompleted();
+          }
+        });
+        subscriber.setProducer(new Producer() {
+          @Override
+          public void request(final long n) {
+            if (n > 0) {
+              stream.request(n);
             }
           }
         });
@@ -101,78 +170,244 @@ public class RxGoro {
       return new GoroWorker();
     }
 
-    private class GoroWorker extends Worker {
+    /**
+     * Worker that collects actions in its own queue and runs them within a single Goro task
+     * posted for each burst of actions. A long burst is split into several tasks,
+     * so that other tasks of the queue are not starved.
+     */
+    private class GoroWorker extends Worker implements Runnable {
+
+      /** Maximum number of actions run by one Goro task. */
+      private static final int MAX_ACTIONS_PER_TASK = 16;
 
-      private final List<ObservableFuture<?>> futures = new ArrayList<>(3);
-      private final BooleanSubscription subscription = new BooleanSubscription();
+      /** Actions waiting to be run. */
+      private final ConcurrentLinkedQueue<ScheduledAction> actions = new ConcurrentLinkedQueue<>();
+      /** Number of actions added to the queue and not run yet. */
+      private final AtomicInteger wip = new AtomicInteger();
+      /** Unsubscription flag. */
+      private volatile boolean unsubscribed;
 
       @Override
       public Subscription schedule(final Action0 action) {
-        final ObservableFuture<Void> future = goro.schedule(queueName, new Callable<Void>() {
-          @Override
-          public Void call() {
-            if (!isUnsubscribed()) {
-              action.call();
-            }
-            return null;
+        if (unsubscribed) {
+          return Subscriptions.unsubscribed();
+        }
+        ScheduledAction scheduled = new ScheduledAction(this, action);
+        actions.offer(scheduled);
+        if (wip.getAndIncrement() == 0) {
+          try {
+            goro.post(queueName, this);
+          } catch (RuntimeException e) {
+            // e.g. the queue rejects tasks under memory pressure
+            dropPending();
+            RxJavaPlugins.getInstance().getErrorHandler().handleError(e);
+            throw e;
           }
-        });
-
-        synchronized (futures) {
-          futures.add(future);
         }
+        return scheduled;
+      }
 
-        future.subscribe(new FutureObserver<Void>() {
-          @Override
-          public void onSuccess(Void value) {
-            synchronized (futures) {
-              futures.remove(future);
-            }
-          }
+      @Override
+      public Subscription schedule(final Action0 action, final long delayTime, final TimeUnit unit) {
+        throw new UnsupportedOperationException("Goro scheduler does not support time-based scheduling");
+      }
 
-          @Override
-          public void onError(Throwable error) {
-            synchronized (futures) {
-              futures.remove(future);
+      @Override
+      public void run() {
+        for (int i = 0; i < MAX_ACTIONS_PER_TASK; i++) {
+          // null only if the queue was cleared on unsubscription
+          ScheduledAction action = actions.poll();
+          if (action != null) {
+            try {
+              action.run();
+            } catch (Throwable e) {
+              report(e);
             }
           }
-        });
-
-        return new Subscription() {
-          @Override
-          public void unsubscribe() {
-            future.cancel(true);
+          if (wip.decrementAndGet() == 0) {
+            return;
           }
+        }
+        // let other tasks of the queue run before the rest of the burst
+        try {
+          goro.post(queueName, this);
+        } catch (RuntimeException e) {
+          dropPending();
+          report(e);
+        }
+      }
 
-          @Override
-          public boolean isUnsubscribed() {
-            return future.isDone() || future.isCancelled();
-          }
-        };
+      /** Drop actions nobody is going to run, so that the next action is posted again. */
+      private void dropPending() {
+        do {
+          actions.poll();
+        } while (wip.decrementAndGet() != 0);
       }
 
-      @Override
-      public Subscription schedule(final Action0 action, final long delayTime, final TimeUnit unit) {
-        throw new UnsupportedOperationException("Goro scheduler does not support time-based scheduling");
+      /** Same as RxJava schedulers: report and keep the worker thread. */
+      private void report(final Throwable e) {
+        RxJavaPlugins.getInstance().getErrorHandler().handleError(e);
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
       }
 
       @Override
       public void unsubscribe() {
-        synchronized (futures) {
-          if (!futures.isEmpty()) {
-            for (ObservableFuture<?> f : futures) {
-              f.cancel(true);
-            }
-            futures.clear();
+        unsubscribed = true;
+        // release pending actions, the counter still covers them
+        actions.clear();
+      }
+
+      @Override
+      public boolean isUnsubscribed() {
+        return unsubscribed;
+      }
+    }
+  }
+
+  /** Passes the future outcome to a subscriber. */
+  private static final class SubscriberObserver<T> implements FutureObserver<T> {
+    /** Target subscriber. */
+    private final Subscriber<? super T> subscriber;
+
+    SubscriberObserver(final Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void onSuccess(final T value) {
+      if (!subscriber.isUnsubscribed()) {
+        subscriber.onNext(value);
+        subscriber.onCompleted();
+      }
+    }
+
+    @Override
+    public void onError(final Throwable error) {
+      if (!subscriber.isUnsubscribed()) {
+        subscriber.onError(error);
+      }
+    }
+  }
+
+  /** Shares a single in-flight execution between subscribers. */
+  private static final class SharedExecution<T> implements Observable.OnSubscribe<T> {
+    /** Goro instance. */
+    private final Goro goro;
+    /** Queue name. */
+    private final String queue;
+    /** Task instance. */
+    private final Callable<T> task;
+
+    /** Current execution, guarded by this. */
+    private Flight flight;
+
+    SharedExecution(final Goro goro, final String queue, final Callable<T> task) {
+      this.goro = goro;
+      this.queue = queue;
+      this.task = task;
+    }
+
+    @Override
+    public void call(final Subscriber<? super T> subscriber) {
+      final Flight flight;
+      final boolean started;
+      synchronized (this) {
+        started = this.flight == null;
+        if (started) {
+          this.flight = new Flight(goro.schedule(queue, task));
+        }
+        flight = this.flight;
+        flight.subscribers++;
+      }
+      if (started) {
+        flight.future.subscribe(flight);
+      }
+      subscriber.add(Subscriptions.create(new Action0() {
+        @Override
+        public void call() {
+          flight.release();
+        }
+      }));
+      flight.future.subscribe(new SubscriberObserver<>(subscriber));
+    }
+
+    /** One execution of the task. */
+    private final class Flight implements FutureObserver<T> {
+      /** Execution future. */
+      final ObservableFuture<T> future;
+      /** Number of subscribers, guarded by the outer instance. */
+      int subscribers;
+
+      Flight(final ObservableFuture<T> future) {
+        this.future = future;
+      }
+
+      void release() {
+        boolean cancel;
+        synchronized (SharedExecution.this) {
+          cancel = --subscribers == 0 && flight == this;
+          if (cancel) {
+            flight = null;
+          }
+        }
+        if (cancel) {
+          future.cancel(true);
+        }
+      }
+
+      private void finish() {
+        synchronized (SharedExecution.this) {
+          if (flight == this) {
+            flight = null;
           }
-          subscription.unsubscribe();
         }
       }
 
       @Override
-      public boolean isUnsubscribed() {
-        return subscription.isUnsubscribed();
+      public void onSuccess(final T value) {
+        finish();
+      }
+
+      @Override
+      public void onError(final Throwable error) {
+        finish();
       }
     }
   }
+
+  /** Action scheduled with {@link GoroScheduler}. */
+  private static final class ScheduledAction implements Subscription {
+
+    /** Owning worker. */
+    private final Subscription worker;
+    /** Action to run, released once run or unsubscribed. */
+    private volatile Action0 action;
+
+    ScheduledAction(final Subscription worker, final Action0 action) {
+      this.worker = worker;
+      this.action = action;
+    }
+
+    void run() {
+      Action0 action = this.action;
+      if (action == null) {
+        return;
+      }
+      this.action = null;
+      if (!worker.isUnsubscribed()) {
+        action.call();
+      }
+    }
+
+    @Override
+    public void unsubscribe() {
+      action = null;
+    }
+
+    @Override
+    public boolean isUnsubscribed() {
+      return action == null;
+    }
+  }
 }
@@ -97,7 +97,8 @@ public abstract class BaseBindingGoroTest {
     goro().schedule(task);
     doBinding();
     assertBinding();
-    verify(serviceInstance).schedule(Goro.DEFAULT_QUEUE, task);
+    verify(serviceInstance).prepare(Goro.DEFAULT_QUEUE, task);
+    verify(serviceInstance).enqueue(eq(Goro.DEFAULT_QUEUE), any(Runnable[].class), eq(1));
   }
 
   @Test
@@ -106,7 +107,8 @@ public abstract class BaseBindingGoroTest {
     goro().schedule("1", task);
     doBinding();
     assertBinding();
-    verify(serviceInstance).schedule("1", task);
+    verify(serviceInstance).prepare("1", task);
+    verify(serviceInstance).enqueue(eq("1"), any(Runnable[].class), eq(1));
   }
 
   @Test
@@ -134,7 +136,7 @@ public abstract class BaseBindingGoroTest {
     goro().schedule(task).subscribe(observer);
 
     doBinding();
-    verify(serviceInstance).schedule(Goro.DEFAULT_QUEUE, task);
+    verify(serviceInstance).prepare(Goro.DEFAULT_QUEUE, task);
     testingQueues.executeAll();
     verify(observer).onSuccess("ok");
   }
@@ -221,9 +223,33 @@ public abstract class BaseBindingGoroTest {
     goro().schedule("clearedQueue", task2);
     doBinding();
     InOrder order = inOrder(serviceInstance);
-    order.verify(serviceInstance).schedule("clearedQueue", task1);
+    order.verify(serviceInstance).prepare("clearedQueue", task1);
     order.verify(serviceInstance).clear("clearedQueue");
-    order.verify(serviceInstance).schedule("clearedQueue", task2);
+    order.verify(serviceInstance).prepare("clearedQueue", task2);
+  }
+
+  @Test
+  public void tasksOfOneQueueShouldBeAddedAtOnce() throws Exception {
+    Callable<String> task1 = okTask();
+    Callable<String> task2 = okTask();
+    goro().schedule("q", task1);
+    goro().post("q", mock(Runnable.class));
+    goro().schedule("q", task2);
+    doBinding();
+    verify(serviceInstance).enqueue(eq("q"), any(Runnable[].class), eq(3));
+    testingQueues.executeAll();
+    verify(task1).call();
+    verify(task2).call();
+  }
+
+  @Test
+  public void canceledTaskShouldNotBeReplayed() throws Exception {
+    Callable<String> task = okTask();
+    goro().schedule("q", task).cancel(true);
+    doBinding();
+    verify(serviceInstance, never()).prepare("q", task);
+    testingQueues.executeAll();
+    verify(task, never()).call();
   }
 
 }
@@ -113,6 +113,40 @@ public class BoundGoroTest extends BaseBindingGoroTest {
     assertThat(error[0]).isInstanceOf(TimeoutException.class);
   }
 
+  @Test
+  public void timeoutShouldCoverExecutionAfterBinding() throws Exception {
+    final Future<String> f = goro.schedule(okTask());
+    final Exception[] error = new Exception[1];
+    Thread t = new Thread() {
+      @Override
+      public void run() {
+        try {
+          f.get(50, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+          error[0] = e;
+        }
+      }
+    };
+    t.start();
+    // bound, but the task is never executed
+    goro.bind();
+    t.join(1000);
+    assertThat(t.isAlive()).isFalse();
+    assertThat(error[0]).isInstanceOf(TimeoutException.class);
+    assertThat(f.isDone()).isFalse();
+  }
+
+  @Test
+  public void cancelAfterBindingShouldCancelDelegate() throws Exception {
+    Callable<?> task = mock(Callable.class);
+    Future<?> future = goro.schedule(task);
+    goro.bind();
+    assertThat(future.cancel(true)).isTrue();
+    assertThat(future.isCancelled()).isTrue();
+    testingQueues.executeAll();
+    verify(task, never()).call();
+  }
+
   @Test
   public void clearShouldNotBePostponedAfterDelegation() {
     goro = (BoundGoro.BoundGoroImpl) Goro.bindAndAutoReconnectWith(context);
@@ -122,6 +156,41 @@ public class BoundGoroTest extends BaseBindingGoroTest {
     verify(serviceInstance).clear("a");
   }
 
+  @Test
+  public void memoryPolicyShouldBePostponed() {
+    MemoryPolicy policy = MemoryPolicy.defaultPolicy();
+    goro.setMemoryPolicy(policy);
+    goro.bind();
+    assertBinding();
+    verify(serviceInstance).setMemoryPolicy(policy);
+  }
+
+  @Test
+  public void cpuTimeTrackingShouldBePostponed() {
+    goro.setCpuTimeTracking(true);
+    goro.bind();
+    assertBinding();
+    verify(serviceInstance).setCpuTimeTracking(true);
+  }
+
+  @Test
+  public void slowTaskWatchdogShouldBePostponed() {
+    SlowTaskWatchdog watchdog = new SlowTaskWatchdog(mock(SlowTaskListener.class));
+    goro.setSlowTaskWatchdog(watchdog);
+    goro.bind();
+    assertBinding();
+    verify(serviceInstance).setSlowTaskWatchdog(watchdog);
+  }
+
+  @Test
+  public void timelineRecorderShouldBePostponed() {
+    TimelineRecorder recorder = new TimelineRecorder(16);
+    goro.setTimelineRecorder(recorder);
+    goro.bind();
+    assertBinding();
+    verify(serviceInstance).setTimelineRecorder(recorder);
+  }
+
   @Test
   public void disconnectionHandlerIsInvoked() {
     goro.bind();
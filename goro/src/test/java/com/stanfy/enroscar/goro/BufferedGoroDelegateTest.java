@@ -0,0 +1,100 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link BufferedGoroDelegate}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class BufferedGoroDelegateTest {
+
+  /** Number of posting threads. */
+  private static final int THREADS = 4;
+  /** Number of tasks posted by each thread. */
+  private static final int TASKS = 2000;
+
+  /** Delegate threads. */
+  private ExecutorService pool;
+
+  /** Instance under tests. */
+  private TestingDelegate goro;
+
+  @Before
+  public void init() {
+    pool = Executors.newFixedThreadPool(THREADS);
+    goro = new TestingDelegate();
+  }
+
+  @After
+  public void shutdown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void callsMadeWhileAttachingShouldKeepOrder() throws Exception {
+    final int[] executed = new int[THREADS];
+    final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    final CountDownLatch done = new CountDownLatch(THREADS * TASKS);
+    final CountDownLatch posting = new CountDownLatch(THREADS);
+
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          posting.countDown();
+          for (int i = 0; i < TASKS; i++) {
+            final int index = i;
+            goro.post("q", new Runnable() {
+              @Override
+              public void run() {
+                // one queue => no concurrent runs
+                if (executed[thread] != index) {
+                  errors.add(thread + ":" + index);
+                }
+                executed[thread]++;
+                done.countDown();
+              }
+            });
+          }
+        }
+      };
+      threads[t].start();
+    }
+    posting.await();
+    goro.attach(Goro.createWithDelegate(pool));
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(errors).isEmpty();
+  }
+
+  /** Exposes delegate updates. */
+  private static final class TestingDelegate extends BufferedGoroDelegate {
+    void attach(final Goro goro) {
+      updateDelegate(goro);
+    }
+  }
+
+}
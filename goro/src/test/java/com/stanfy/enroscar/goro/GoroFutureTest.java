@@ -0,0 +1,270 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for GoroFuture.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class GoroFutureTest {
+
+  /** Instance under the tests. */
+  private GoroFuture<String> future;
+
+  @Before
+  public void create() {
+    future = new GoroFuture<>(new ListenersHandler(), new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return "ok";
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldNotifyObserversOnTheirExecutors() {
+    FutureObserver<String> o1 = mock(FutureObserver.class);
+    FutureObserver<String> o2 = mock(FutureObserver.class);
+    Executor e1 = mock(Executor.class);
+    Executor e2 = mock(Executor.class);
+
+    future.subscribe(e1, o1);
+    future.subscribe(e2, o2);
+    verify(e1, never()).execute(any(Runnable.class));
+    verify(e2, never()).execute(any(Runnable.class));
+
+    future.run();
+    verify(e1).execute(any(Runnable.class));
+    verify(e2).execute(any(Runnable.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldPostOncePerExecutor() {
+    FutureObserver<String> o1 = mock(FutureObserver.class);
+    FutureObserver<String> o2 = mock(FutureObserver.class);
+    final ArrayList<Runnable> commands = new ArrayList<>();
+    //noinspection NullableProblems
+    Executor executor = new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        commands.add(command);
+      }
+    };
+
+    future.subscribe(executor, o1);
+    future.subscribe(executor, o2);
+    future.run();
+    assertThat(commands).hasSize(1);
+
+    commands.get(0).run();
+    InOrder order = inOrder(o1, o2);
+    order.verify(o1).onSuccess("ok");
+    order.verify(o2).onSuccess("ok");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldNotifyObserverOnItsExecutorAfterCompletion() {
+    future.run();
+    FutureObserver<String> observer = mock(FutureObserver.class);
+    Executor executor = mock(Executor.class);
+    future.subscribe(executor, observer);
+    verify(executor).execute(any(Runnable.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void failingExecutorShouldNotPreventOtherDeliveries() {
+    FutureObserver<String> o1 = mock(FutureObserver.class);
+    FutureObserver<String> o2 = mock(FutureObserver.class);
+    FutureObserver<String> o3 = mock(FutureObserver.class);
+    Executor failing = mock(Executor.class);
+    RuntimeException error = new RuntimeException();
+    doThrow(error).when(failing).execute(any(Runnable.class));
+    future.subscribe(o1);
+    future.subscribe(failing, o2);
+    future.subscribe(o3);
+    try {
+      future.run();
+      fail("Executor error was not rethrown");
+    } catch (RuntimeException e) {
+      assertThat(e).isSameAs(error);
+    }
+    verify(o1).onSuccess("ok");
+    verify(o3).onSuccess("ok");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void failingObserverShouldNotPreventOtherDeliveries() {
+    FutureObserver<String> o1 = mock(FutureObserver.class);
+    FutureObserver<String> o2 = mock(FutureObserver.class);
+    doThrow(new IllegalStateException()).when(o1).onSuccess("ok");
+    future.subscribe(o1);
+    future.subscribe(o2);
+    try {
+      future.run();
+      fail("Observer error was not rethrown");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    verify(o2).onSuccess("ok");
+  }
+
+  @Test
+  public void timedOutWaitersShouldBeUnlinked() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      try {
+        future.get(1, TimeUnit.MILLISECONDS);
+        fail("Timeout expected");
+      } catch (TimeoutException e) {
+        // expected
+      }
+    }
+    assertThat(future.stackSize()).isZero();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldNotifyObserverAfterCompletion() throws Exception {
+    future.run();
+    FutureObserver<String> observer = mock(FutureObserver.class);
+    future.subscribe(observer);
+    verify(observer).onSuccess("ok");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldNotifyObserversInSubscriptionOrder() {
+    FutureObserver<String> o1 = mock(FutureObserver.class);
+    FutureObserver<String> o2 = mock(FutureObserver.class);
+    future.subscribe(o1);
+    future.subscribe(o2);
+    future.run();
+    InOrder order = inOrder(o1, o2);
+    order.verify(o1).onSuccess("ok");
+    order.verify(o2).onSuccess("ok");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldPassErrorToObservers() throws Exception {
+    final Exception error = new Exception();
+    GoroFuture<String> future = new GoroFuture<>(new ListenersHandler(), new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        throw error;
+      }
+    });
+    FutureObserver<String> observer = mock(FutureObserver.class);
+    future.subscribe(observer);
+    future.run();
+    verify(observer).onError(error);
+    try {
+      future.get();
+      fail("Error was not rethrown");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isSameAs(error);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void cancelShouldSkipTaskAndObservers() throws Exception {
+    FutureObserver<String> observer = mock(FutureObserver.class);
+    future.subscribe(observer);
+    assertThat(future.cancel(true)).isTrue();
+    assertThat(future.cancel(true)).isFalse();
+    future.run();
+    assertThat(future.isDone()).isTrue();
+    assertThat(future.isCancelled()).isTrue();
+    verifyZeroInteractions(observer);
+  }
+
+  @Test(expected = CancellationException.class)
+  public void getShouldThrowAfterCancel() throws Exception {
+    future.cancel(false);
+    future.get();
+  }
+
+  @Test
+  public void getShouldReturnResult() throws Exception {
+    Thread t = new Thread(future);
+    t.start();
+    assertThat(future.get(1, TimeUnit.SECONDS)).isEqualTo("ok");
+    assertThat(future.get()).isEqualTo("ok");
+    assertThat(future.isDone()).isTrue();
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void getShouldRespectTimeout() throws Exception {
+    future.get(5, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void progressShouldBeCoalesced() throws Exception {
+    final ArrayList<Runnable> commands = new ArrayList<>();
+    //noinspection NullableProblems
+    final Executor executor = new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        commands.add(command);
+      }
+    };
+    final ProgressObserver observer = mock(ProgressObserver.class);
+    ProgressTask task = new ProgressTask() {
+      @Override
+      public String call() throws Exception {
+        reporter.report(1);
+        reporter.report(2);
+        reporter.report(3);
+        assertThat(commands).hasSize(1);
+        commands.remove(0).run();
+        verify(observer).onProgress(3);
+        verify(observer, never()).onProgress(1);
+        verify(observer, never()).onProgress(2);
+        return "ok";
+      }
+    };
+    GoroFuture<String> future = new GoroFuture<>(new ListenersHandler(), task);
+    future.subscribeProgress(executor, 0, observer);
+    future.run();
+    // assertion errors thrown by the task are reported here
+    assertThat(future.get()).isEqualTo("ok");
+  }
+
+  /** Task that reports progress. */
+  private abstract static class ProgressTask implements Callable<String>, ProgressAware {
+    /** Injected reporter. */
+    ProgressReporter reporter;
+
+    @Override
+    public void injectProgressReporter(final ProgressReporter reporter) {
+      this.reporter = reporter;
+    }
+  }
+
+}
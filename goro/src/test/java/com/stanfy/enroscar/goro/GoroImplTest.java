@@ -1,5 +1,6 @@
 package com.stanfy.enroscar.goro;
 
+import android.content.ComponentCallbacks2;
 import android.os.Build;
 
 import com.stanfy.enroscar.goro.Goro.GoroImpl;
@@ -10,8 +11,11 @@ import org.junit.runner.RunWith;
 import org.mockito.InOrder;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
+import java.util.ArrayList;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -226,4 +230,132 @@ public class GoroImplTest {
     assertThat(testingQueues.getLastQueueName()).isEqualTo("q1");
   }
 
+  @Test
+  public void postShouldExecuteWithoutListeners() {
+    goro.addTaskListener(listener);
+    Runnable task = mock(Runnable.class);
+    goro.post("q", task);
+    assertThat(testingQueues.getLastQueueName()).isEqualTo("q");
+    verify(task, never()).run();
+    testingQueues.executeAll();
+    verify(task).run();
+    verifyZeroInteractions(listener);
+  }
+
+  @Test
+  public void postShouldPassErrorsToQueueHandler() {
+    QueueErrorHandler handler = mock(QueueErrorHandler.class);
+    goro.setErrorHandler("q", handler);
+    RuntimeException error = new RuntimeException();
+    Runnable task = mock(Runnable.class);
+    doThrow(error).when(task).run();
+    goro.post("q", task);
+    testingQueues.executeAll();
+    verify(handler).onError("q", task, error);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void streamShouldDeliverRequestedValues() {
+    TaskStream<Integer> stream = goro.stream("q", 4, new StreamingTask<Integer>() {
+      @Override
+      public void run(final Emitter<Integer> emitter) throws Exception {
+        for (int i = 0; i < 3; i++) {
+          emitter.emit(i);
+        }
+      }
+    });
+    StreamObserver<Integer> observer = mock(StreamObserver.class);
+    stream.subscribe(observer);
+    stream.request(2);
+
+    testingQueues.executeAll();
+    InOrder order = inOrder(observer);
+    order.verify(observer).onNext(0);
+    order.verify(observer).onNext(1);
+    verify(observer, never()).onNext(2);
+    verify(observer, never()).onComplete();
+
+    stream.request(1);
+    order.verify(observer).onNext(2);
+    order.verify(observer).onComplete();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void clearShouldTerminateStreamBeforeProducerRuns() throws Exception {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    Queues.Impl queues = new Queues.Impl();
+    //noinspection NullableProblems
+    queues.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    goro = new GoroImpl(queues);
+    StreamingTask<Integer> task = mock(StreamingTask.class);
+    TaskStream<Integer> stream = goro.stream("q", task);
+    StreamObserver<Integer> observer = mock(StreamObserver.class);
+    stream.subscribe(observer);
+
+    goro.clear("q");
+    for (Runnable r : tasks) {
+      r.run();
+    }
+    verify(task, never()).run(any(StreamingTask.Emitter.class));
+    verify(observer).onError(any(CancellationException.class));
+    verify(observer, never()).onComplete();
+  }
+
+  @Test
+  public void metricsShouldCountQueueTasks() {
+    goro.setCpuTimeTracking(true);
+    goro.schedule("q", mock(Callable.class));
+    goro.schedule("q", mock(Callable.class));
+    QueueMetrics queue = goro.getMetrics().getQueue("q");
+    assertThat(queue.getEnqueued()).isEqualTo(2);
+    assertThat(queue.getDepth()).isEqualTo(2);
+
+    testingQueues.executeAll();
+    queue = goro.getMetrics().getQueue("q");
+    assertThat(queue.getDepth()).isZero();
+    assertThat(queue.getFinished()).isEqualTo(2);
+    assertThat(queue.getWaitTime().getCount()).isEqualTo(2);
+    assertThat(queue.getRunTime().getCount()).isEqualTo(2);
+    // both mocks are of the same class
+    assertThat(queue.getCpuTimeByTask()).hasSize(1);
+  }
+
+  @Test
+  public void metricsShouldCountDirectTasks() {
+    goro.schedule(null, mock(Callable.class));
+    testingQueues.executeAll();
+    QueueMetrics direct = goro.getMetrics().getDirectTasks();
+    assertThat(direct.getName()).isNull();
+    assertThat(direct.getFinished()).isEqualTo(1);
+    // disabled by default
+    assertThat(direct.getCpuTimeByTask()).isEmpty();
+  }
+
+  @Test
+  public void memoryRestrictionsShouldBeLiftedAfterTimeout() {
+    Queues queues = mock(Queues.class);
+    goro = new GoroImpl(queues);
+    MemoryPolicy policy = MemoryPolicy.defaultPolicy().resumeAfter(1000).deferrable("q");
+    goro.setMemoryPolicy(policy);
+
+    goro.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    ShadowLooper.idleMainLooper(600);
+    // a new trim call restarts the timeout
+    goro.trimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    ShadowLooper.idleMainLooper(600);
+    verify(queues, never()).trimMemory(eq(0), any(String[].class));
+
+    ShadowLooper.idleMainLooper(400);
+    verify(queues).trimMemory(eq(0), any(String[].class));
+    assertThat(policy.getResumeCount()).isEqualTo(1);
+    assertThat(policy.getLastActions()).isZero();
+  }
+
 }
@@ -1,5 +1,6 @@
 package com.stanfy.enroscar.goro;
 
+import android.app.Notification;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
@@ -10,15 +11,23 @@ import android.os.Parcelable;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Mockito.*;
 import static org.robolectric.RuntimeEnvironment.application;
+import static org.robolectric.Shadows.shadowOf;
 
 /**
  * Tests for GoroService.
@@ -44,6 +53,7 @@ public class GoroServiceTest {
     queues = new TestingQueues();
     GoroService.setup(application, new Goro.GoroImpl(queues));
     service = new GoroService();
+    service.ingestionExecutor = AtomicFuture.IMMEDIATE;
     service.onCreate();
 
     task = new Task(new Callable<String>() {
@@ -96,6 +106,21 @@ public class GoroServiceTest {
     Exception e = new Exception();
     doThrow(e).when(task).call();
     service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
+    try {
+      queues.executeAll();
+      fail("Error was not rethrown");
+    } catch (GoroException ge) {
+      assertThat(ge.getCause()).isSameAs(e);
+      assertThat(ge.getRecentEvents()).contains(" started " + task.getClass().getName());
+    }
+  }
+
+  @Test
+  public void shouldNotEatRejectionsThrownByTasks() throws Exception {
+    Task task = mock(Task.class);
+    Exception e = new RejectedExecutionException();
+    doThrow(e).when(task).call();
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
     try {
       queues.executeAll();
       fail("Error was not rethrown");
@@ -115,6 +140,216 @@ public class GoroServiceTest {
     queues.executeAll(); // and nothing happens
   }
 
+  @Test
+  public void shouldStopAfterLastTask() {
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 2);
+    assertThat(service.getGoro()).isNotNull();
+    assertThat(shadowOf(service).isStoppedBySelf()).isFalse();
+    queues.executeAll();
+    assertThat(shadowOf(service).isStoppedBySelf()).isTrue();
+  }
+
+  @Test
+  public void shouldPromoteItselfWhileBacklogIsLarge() {
+    Notification notification = new Notification();
+    NotificationFactory factory = mock(NotificationFactory.class);
+    when(factory.createNotification(any(Context.class), anyInt(), anyInt(), anyLong()))
+        .thenReturn(notification);
+    GoroService.setup(application, new Goro.GoroImpl(queues), null,
+        new ForegroundPromotion(1, factory).pendingTasks(2).updateInterval(100));
+
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
+    assertThat(shadowOf(service).getLastForegroundNotification()).isNull();
+
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 2);
+    ShadowLooper.idleMainLooper(100);
+    assertThat(shadowOf(service).getLastForegroundNotification()).isSameAs(notification);
+    verify(factory).createNotification(service, 2, 0, 0);
+
+    queues.executeAll();
+    assertThat(shadowOf(service).isForegroundStopped()).isTrue();
+  }
+
+  @Test
+  public void shouldStartForegroundFromIntent() {
+    service.onBind(new Intent());
+    Notification notification = new Notification();
+    service.onStartCommand(GoroService.foregroundTaskIntent(application, task, 1, notification), 0, 1);
+    assertThat(shadowOf(service).getLastForegroundNotification()).isSameAs(notification);
+    queues.executeAll();
+    assertThat(executed).isTrue();
+    // bound users keep the service, but not in the foreground
+    assertThat(shadowOf(service).isForegroundStopped()).isTrue();
+  }
+
+  @Test
+  public void shouldStartForegroundBeforeIngestion() {
+    final ArrayList<Runnable> ingestion = new ArrayList<>();
+    //noinspection NullableProblems
+    service.ingestionExecutor = new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        ingestion.add(command);
+      }
+    };
+    Notification notification = new Notification();
+    service.onStartCommand(GoroService.foregroundTaskIntent(application, task, 1, notification), 0, 1);
+    assertThat(ingestion).hasSize(1);
+    assertThat(shadowOf(service).getLastForegroundNotification()).isSameAs(notification);
+  }
+
+  @Test
+  public void shouldNotPollSmallBacklog() {
+    NotificationFactory factory = mock(NotificationFactory.class);
+    GoroService.setup(application, new Goro.GoroImpl(queues), null,
+        new ForegroundPromotion(1, factory).pendingTasks(10));
+
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
+    assertThat(Robolectric.getForegroundThreadScheduler().size()).isZero();
+    verifyZeroInteractions(factory);
+  }
+
+  @Test
+  public void shouldSurviveMalformedIntents() {
+    Intent command = new Intent().putExtra(GoroService.EXTRA_TASK, new Bundle());
+    service.onStartCommand(command, 0, 1);
+    assertThat(shadowOf(service).isStoppedBySelf()).isTrue();
+
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 2);
+    queues.executeAll();
+    assertThat(executed).isTrue();
+  }
+
+  @Test
+  public void shouldNotStopWithBoundUsers() {
+    service.onBind(new Intent());
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
+    queues.executeAll();
+    assertThat(shadowOf(service).isStoppedBySelf()).isFalse();
+  }
+
+  @Test
+  public void shouldScheduleTasksOnIngestionExecutor() {
+    final ArrayList<Runnable> ingestion = new ArrayList<>();
+    //noinspection NullableProblems
+    service.ingestionExecutor = new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        ingestion.add(command);
+      }
+    };
+    service.onStartCommand(GoroService.taskIntent(application, task), 0, 1);
+    assertThat(ingestion).hasSize(1);
+    queues.executeAll();
+    assertThat(executed).isFalse();
+
+    ingestion.remove(0).run();
+    assertThat(shadowOf(service).isStoppedBySelf()).isFalse();
+    queues.executeAll();
+    assertThat(executed).isTrue();
+    assertThat(shadowOf(service).isStoppedBySelf()).isTrue();
+  }
+
+  @Test
+  public void shouldScheduleBatch() {
+    BatchTask.executed.clear();
+    TaskBatch batch = new TaskBatch()
+        .add(new BatchTask(1))
+        .add("q", new BatchTask(2))
+        .add(new BatchTask(3));
+    GoroListener listener = mock(GoroListener.class);
+    service.getGoro().addTaskListener(listener);
+
+    service.onStartCommand(GoroService.taskIntent(application, batch), 0, 1);
+    verify(listener, times(2)).onTaskSchedule(any(Callable.class), eq(Goro.DEFAULT_QUEUE));
+    verify(listener).onTaskSchedule(any(Callable.class), eq("q"));
+
+    queues.executeAll();
+    assertThat(BatchTask.executed).containsOnly(1, 2, 3);
+    assertThat(BatchTask.executed.indexOf(1)).isLessThan(BatchTask.executed.indexOf(3));
+  }
+
+  @Test
+  public void shouldScheduleEncodedTasks() throws Exception {
+    GoroService.setup(application, new Goro.GoroImpl(queues), new TaskCodecs()
+        .register(1, TaskCodecsTest.SyncTask.class, new TaskCodecsTest.SyncTask.Codec()));
+    service = new GoroService();
+    service.ingestionExecutor = AtomicFuture.IMMEDIATE;
+    Intent intent = GoroService.encodedTaskIntent(application, "q",
+        new TaskCodecsTest.SyncTask("a", 1));
+    GoroListener listener = mock(GoroListener.class);
+    service.getGoro().addTaskListener(listener);
+
+    service.onStartCommand(intent, 0, 1);
+    verify(listener).onTaskSchedule(any(Callable.class), eq("q"));
+    queues.executeAll();
+    verify(listener).onTaskFinish(any(Callable.class), eq("a:1"));
+  }
+
+  @Test
+  public void dumpShouldPrintQueuesState() {
+    Goro goro = service.getGoro();
+    goro.schedule("q", new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        throw new Exception("failure");
+      }
+    });
+    queues.executeAll();
+    goro.schedule("q", task);
+
+    StringWriter out = new StringWriter();
+    service.dump(null, new PrintWriter(out), new String[0]);
+    assertThat(out.toString())
+        .contains("q: depth=1, finished=1, cpu=")
+        .contains("errors=1 (last ")
+        .contains("Recent events:")
+        .contains("q added 1");
+  }
+
+  /** Task that survives marshalling. */
+  public static class BatchTask implements Parcelable, Callable<Integer> {
+
+    /** Ids of executed tasks. */
+    static final ArrayList<Integer> executed = new ArrayList<>();
+
+    /** Creator instance. */
+    public static final Creator<BatchTask> CREATOR = new Creator<BatchTask>() {
+      @Override
+      public BatchTask createFromParcel(final Parcel source) {
+        return new BatchTask(source.readInt());
+      }
+
+      @Override
+      public BatchTask[] newArray(final int size) {
+        return new BatchTask[size];
+      }
+    };
+
+    private final int id;
+
+    BatchTask(final int id) {
+      this.id = id;
+    }
+
+    @Override
+    public Integer call() {
+      executed.add(id);
+      return id;
+    }
+
+    @Override
+    public int describeContents() {
+      return 0;
+    }
+
+    @Override
+    public void writeToParcel(final Parcel dest, final int flags) {
+      dest.writeInt(id);
+    }
+  }
+
   /** A test task. */
   public static class Task implements Parcelable, Callable<String>, ServiceContextAware {
 
@@ -0,0 +1,44 @@
+package com.stanfy.enroscar.goro;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link Histogram}.
+ */
+public class HistogramTest {
+
+  @Test
+  public void bucketShouldContainValue() {
+    long[] values = {0, 1, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE};
+    for (long value : values) {
+      int index = Histogram.index(value);
+      assertThat(index).isLessThan(Histogram.BUCKETS);
+      assertThat(Histogram.lowestValue(index)).isLessThanOrEqualTo(value);
+      assertThat(Histogram.highestValue(index)).isGreaterThanOrEqualTo(value);
+    }
+  }
+
+  @Test
+  public void percentilesShouldBePrecise() {
+    Histogram histogram = new Histogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+    HistogramSnapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getCount()).isEqualTo(1000);
+    assertThat(snapshot.getValueAtPercentile(50)).isBetween(500000L, 500000L + 500000L / 8);
+    assertThat(snapshot.getMax()).isBetween(1000000L, 1000000L + 1000000L / 8);
+  }
+
+  @Test
+  public void emptySnapshotShouldBeShared() {
+    HistogramSnapshot snapshot = new Histogram().snapshot();
+    assertThat(snapshot).isSameAs(HistogramSnapshot.EMPTY);
+    assertThat(snapshot.getCount()).isZero();
+    assertThat(snapshot.getMax()).isZero();
+    assertThat(snapshot.getValueAtPercentile(99)).isZero();
+  }
+
+}
@@ -4,10 +4,14 @@ import android.content.ServiceConnection;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.util.concurrent.Callable;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
+import static org.robolectric.RuntimeEnvironment.application;
+import static org.robolectric.Shadows.shadowOf;
 
 /**
  * Tests for OnDemandBindingGoro.
@@ -40,4 +44,33 @@ public class OnDemandBindingGoroTest extends BaseBindingGoroTest {
     verify(task).call();
   }
 
+  @Test
+  public void shouldUnbindAsapWithoutLinger() {
+    goro.schedule(mock(Callable.class));
+    assertThat(shadowOf(application).getUnboundServiceConnections()).hasSize(1);
+    assertThat(goro.getBindCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void callsDuringLingerShouldGoToService() throws Exception {
+    OnDemandGoro lingering = Goro.bindOnDemandWith(context, 1000);
+    lingering.schedule(mock(Callable.class));
+    assertThat(shadowOf(application).getUnboundServiceConnections()).isEmpty();
+
+    ShadowLooper.idleMainLooper(500);
+    Callable<?> task = mock(Callable.class);
+    lingering.schedule("q", task);
+    verify(serviceInstance).schedule("q", task);
+    assertThat(lingering.getBindCount()).isEqualTo(1);
+
+    // linger is counted from the last call
+    ShadowLooper.idleMainLooper(700);
+    assertThat(shadowOf(application).getUnboundServiceConnections()).isEmpty();
+    ShadowLooper.idleMainLooper(300);
+    assertThat(shadowOf(application).getUnboundServiceConnections()).hasSize(1);
+
+    lingering.schedule(mock(Callable.class));
+    assertThat(lingering.getBindCount()).isEqualTo(2);
+  }
+
 }
@@ -6,8 +6,10 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Mockito.*;
 
 /**
@@ -97,4 +99,204 @@ public class QueuesImplTest {
     assertThat(tasks).isEmpty();
   }
 
+  @Test
+  public void queueShouldContinueAfterHandledError() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    //noinspection NullableProblems
+    queuesImpl.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    QueueErrorHandler handler = mock(QueueErrorHandler.class);
+    queuesImpl.setErrorHandler("q", handler);
+
+    Runnable failing = mock(Runnable.class);
+    RuntimeException error = new RuntimeException();
+    doThrow(error).when(failing).run();
+    Runnable next = mock(Runnable.class);
+    queuesImpl.getExecutor("q").execute(failing);
+    queuesImpl.getExecutor("q").execute(next);
+
+    tasks.remove(0).run();
+    verify(handler).onError("q", failing, error);
+    assertThat(tasks).hasSize(1);
+    tasks.remove(0).run();
+    verify(next).run();
+  }
+
+  @Test
+  public void taskCounterShouldTrackFinishedAndRemovedTasks() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    //noinspection NullableProblems
+    queuesImpl.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    TaskCounter counter = new TaskCounter();
+    Runnable idle = mock(Runnable.class);
+    counter.setIdleCallback(idle);
+    queuesImpl.setTaskTracker(counter);
+
+    queuesImpl.getExecutor("q").execute(mock(Runnable.class));
+    queuesImpl.getExecutor("q").execute(mock(Runnable.class));
+    queuesImpl.getExecutor(null).execute(mock(Runnable.class));
+    assertThat(counter.get()).isEqualTo(3);
+
+    tasks.remove(0).run();
+    assertThat(counter.get()).isEqualTo(2);
+    queuesImpl.clear("q");
+    assertThat(counter.get()).isEqualTo(1);
+    verify(idle, never()).run();
+
+    // the remaining one is a task beyond any queue
+    tasks.remove(tasks.size() - 1).run();
+    assertThat(counter.get()).isZero();
+    verify(idle).run();
+  }
+
+  @Test
+  public void removeShouldDropPendingTask() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    //noinspection NullableProblems
+    queuesImpl.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    TaskCounter counter = new TaskCounter();
+    queuesImpl.setTaskTracker(counter);
+    Queues.TaskQueueExecutor queue = (Queues.TaskQueueExecutor) queuesImpl.getExecutor("q");
+    Runnable r1 = mock(Runnable.class), r2 = mock(Runnable.class), r3 = mock(Runnable.class);
+    queue.execute(r1);
+    queue.execute(r2);
+    queue.execute(r3);
+
+    assertThat(queue.remove(r2)).isTrue();
+    assertThat(queue.remove(r2)).isFalse();
+    assertThat(counter.get()).isEqualTo(2);
+
+    tasks.remove(0).run();
+    tasks.remove(0).run();
+    verify(r1).run();
+    verify(r2, never()).run();
+    verify(r3).run();
+    assertThat(counter.get()).isZero();
+  }
+
+  @Test
+  public void trimMemoryShouldEvictIdleQueues() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    //noinspection NullableProblems
+    queuesImpl.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    Executor idle = queuesImpl.getExecutor("idle");
+    Executor busy = queuesImpl.getExecutor("busy");
+    busy.execute(mock(Runnable.class));
+
+    assertThat(queuesImpl.trimMemory(MemoryPolicy.EVICT_IDLE_QUEUES, new String[0])).isEqualTo(1);
+    assertThat(queuesImpl.getExecutor("busy")).isSameAs(busy);
+    assertThat(queuesImpl.getExecutor("idle")).isNotSameAs(idle);
+
+    // evicted executor passes tasks to its replacement
+    Runnable task = mock(Runnable.class);
+    idle.execute(task);
+    tasks.remove(tasks.size() - 1).run();
+    verify(task).run();
+  }
+
+  @Test
+  public void trimMemoryShouldForgetMetricsOfEvictedQueues() {
+    MetricsRecorder metrics = new MetricsRecorder();
+    queuesImpl.setMetricsRecorder(metrics);
+    queuesImpl.getExecutor("idle");
+    MetricsRecorder.QueueRecorder recorder = metrics.queue("idle");
+
+    queuesImpl.trimMemory(MemoryPolicy.EVICT_IDLE_QUEUES, new String[0]);
+    assertThat(metrics.queue("idle")).isNotSameAs(recorder);
+  }
+
+  @Test
+  public void trimMemoryShouldPauseDeferrableQueues() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    //noinspection NullableProblems
+    queuesImpl.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    String[] deferrable = {"prefetch"};
+    queuesImpl.trimMemory(MemoryPolicy.PAUSE_DEFERRABLE, deferrable);
+
+    Runnable task = mock(Runnable.class);
+    queuesImpl.getExecutor("prefetch").execute(task);
+    queuesImpl.getExecutor("other").execute(mock(Runnable.class));
+    assertThat(tasks).hasSize(1);
+
+    queuesImpl.trimMemory(0, deferrable);
+    assertThat(tasks).hasSize(2);
+    tasks.get(1).run();
+    verify(task).run();
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void trimMemoryShouldRejectDeferrableTasks() {
+    queuesImpl.trimMemory(MemoryPolicy.REJECT_DEFERRABLE, new String[] {"prefetch"});
+    queuesImpl.getExecutor("prefetch").execute(mock(Runnable.class));
+  }
+
+  @Test
+  public void trimMemoryShouldRejectDeferrableBatches() {
+    queuesImpl.trimMemory(MemoryPolicy.REJECT_DEFERRABLE, new String[] {"prefetch"});
+    Queues.TaskQueueExecutor queue = (Queues.TaskQueueExecutor) queuesImpl.getExecutor("prefetch");
+    Runnable[] tasks = {mock(Runnable.class)};
+    try {
+      queue.executeAll(tasks, 1, true);
+      fail("Rejection expected");
+    } catch (QueueRejectedException e) {
+      // expected
+    }
+    // buffered calls are not rejected
+    queue.executeAll(tasks, 1, false);
+  }
+
+  @Test
+  public void delegateRejectionShouldDropTask() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    final boolean[] saturated = {true};
+    queuesImpl.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        if (saturated[0]) {
+          throw new RejectedExecutionException();
+        }
+        tasks.add(command);
+      }
+    });
+    Runnable rejected = mock(Runnable.class);
+    Executor queue = queuesImpl.getExecutor("1");
+    try {
+      queue.execute(rejected);
+      fail("Rejection expected");
+    } catch (RejectedExecutionException e) {
+      assertThat(e).isNotInstanceOf(QueueRejectedException.class);
+    }
+
+    saturated[0] = false;
+    Runnable accepted = mock(Runnable.class);
+    queue.execute(accepted);
+    tasks.get(0).run();
+    verify(accepted).run();
+    verify(rejected, never()).run();
+  }
+
 }
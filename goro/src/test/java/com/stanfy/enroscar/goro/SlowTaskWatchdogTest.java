@@ -0,0 +1,125 @@
+package com.stanfy.enroscar.goro;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for {@link SlowTaskWatchdog}.
+ */
+public class SlowTaskWatchdogTest {
+
+  /** Listener. */
+  private SlowTaskListener listener;
+
+  /** Instance under tests. */
+  private SlowTaskWatchdog watchdog;
+
+  /** Queue under watch. */
+  private Queues.TaskQueueExecutor queue;
+
+  @Before
+  public void init() {
+    listener = mock(SlowTaskListener.class);
+    watchdog = new SlowTaskWatchdog(listener).defaultThreshold(0).threshold("slow", 1);
+    queue = new Queues.TaskQueueExecutor("slow", Executors.newSingleThreadExecutor());
+    queue.tracker = watchdog.tracker;
+  }
+
+  @Test
+  public void shouldReportSlowTaskOnce() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final String[] threadName = new String[1];
+    queue.execute(new BlockingTask(started, release, threadName));
+    assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+    Thread.sleep(10);
+
+    watchdog.sample();
+    watchdog.sample();
+    verify(listener).onSlowTask(eq("slow"), eq(BlockingTask.class), anyLong(), any(StackTraceElement[].class));
+    assertThat(threadName[0]).endsWith(" [slow]");
+    release.countDown();
+  }
+
+  @Test
+  public void shouldIgnoreQueuesWithoutThreshold() throws Exception {
+    queue = new Queues.TaskQueueExecutor("fast", Executors.newSingleThreadExecutor());
+    queue.tracker = watchdog.tracker;
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    queue.execute(new BlockingTask(started, release, new String[1]));
+    assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+    Thread.sleep(10);
+
+    watchdog.sample();
+    verifyZeroInteractions(listener);
+    release.countDown();
+  }
+
+  @Test
+  public void nestedTaskShouldNotEndOuterTask() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final String[] threadName = new String[1];
+    final BlockingTask outer = new BlockingTask(started, release, threadName);
+    //noinspection NullableProblems
+    final Queues.TaskQueueExecutor inline = new Queues.TaskQueueExecutor("fast", new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        command.run();
+      }
+    });
+    inline.tracker = watchdog.tracker;
+    queue.execute(new Runnable() {
+      @Override
+      public void run() {
+        inline.execute(mock(Runnable.class));
+        outer.run();
+      }
+    });
+    assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+    Thread.sleep(10);
+
+    watchdog.sample();
+    verify(listener).onSlowTask(eq("slow"), any(Class.class), anyLong(), any(StackTraceElement[].class));
+    assertThat(threadName[0]).endsWith(" [slow]");
+    release.countDown();
+  }
+
+  /** Task that waits for a signal. */
+  private static final class BlockingTask implements Runnable {
+    /** Signals. */
+    private final CountDownLatch started, release;
+    /** Thread name seen by the task. */
+    private final String[] threadName;
+
+    BlockingTask(final CountDownLatch started, final CountDownLatch release, final String[] threadName) {
+      this.started = started;
+      this.release = release;
+      this.threadName = threadName;
+    }
+
+    @Override
+    public void run() {
+      threadName[0] = Thread.currentThread().getName();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,100 @@
+package com.stanfy.enroscar.goro;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link TaskCodecs}.
+ */
+public class TaskCodecsTest {
+
+  /** Instance under tests. */
+  private TaskCodecs codecs;
+
+  @Before
+  public void create() {
+    codecs = new TaskCodecs().register(300, SyncTask.class, new SyncTask.Codec());
+  }
+
+  @Test
+  public void shouldRestoreTask() throws Exception {
+    byte[] data = codecs.encode(new SyncTask("account", 42));
+    // 2 bytes of type id, string length and chars, long
+    assertThat(data).hasSize(2 + 2 + 7 + 8);
+    Callable<?> task = codecs.decode(data);
+    assertThat(task).isInstanceOf(SyncTask.class);
+    assertThat(task.call()).isEqualTo("account:42");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectDuplicateIds() {
+    codecs.register(300, OtherTask.class, new OtherTask.Codec());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectUnknownTasks() {
+    codecs.encode(new OtherTask());
+  }
+
+  @Test(expected = GoroException.class)
+  public void shouldFailOnUnknownTypeId() {
+    new TaskCodecs().decode(new byte[] {1});
+  }
+
+  /** Test task. */
+  static final class SyncTask implements Callable<String> {
+    final String account;
+    final long since;
+
+    SyncTask(final String account, final long since) {
+      this.account = account;
+      this.since = since;
+    }
+
+    @Override
+    public String call() {
+      return account + ":" + since;
+    }
+
+    /** Codec. */
+    static final class Codec implements TaskCodec<SyncTask> {
+      @Override
+      public void write(final SyncTask task, final DataOutput out) throws IOException {
+        out.writeUTF(task.account);
+        out.writeLong(task.since);
+      }
+
+      @Override
+      public SyncTask read(final DataInput in) throws IOException {
+        return new SyncTask(in.readUTF(), in.readLong());
+      }
+    }
+  }
+
+  /** Another test task. */
+  static final class OtherTask implements Callable<String> {
+    @Override
+    public String call() {
+      return "other";
+    }
+
+    /** Codec. */
+    static final class Codec implements TaskCodec<OtherTask> {
+      @Override
+      public void write(final OtherTask task, final DataOutput out) { }
+
+      @Override
+      public OtherTask read(final DataInput in) {
+        return new OtherTask();
+      }
+    }
+  }
+
+}
@@ -1,6 +1,7 @@
 package com.stanfy.enroscar.goro;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.concurrent.Executor;
 
 /**
@@ -19,6 +20,15 @@ public class TestingQueues implements Queues {
     }
   };
 
+  /** Error handlers. */
+  private final HashMap<String, QueueErrorHandler> errorHandlers = new HashMap<>();
+
+  /** Tasks tracker. */
+  private TaskTracker tracker = TaskTracker.NONE;
+
+  /** Metrics recorder. */
+  private MetricsRecorder metrics;
+
   /** Last queue name. */
   private String lastQueueName;
 
@@ -30,7 +40,13 @@ public class TestingQueues implements Queues {
   @Override
   public Executor getExecutor(final String queueName) {
     lastQueueName = queueName;
-    return new TaskQueueExecutor(delegateExecutor);
+    TaskQueueExecutor executor = new TaskQueueExecutor(queueName, delegateExecutor);
+    executor.errorHandler = errorHandlers.get(queueName);
+    executor.tracker = tracker;
+    if (metrics != null) {
+      executor.metrics = queueName != null ? metrics.queue(queueName) : metrics.direct;
+    }
+    return executor;
   }
 
   @Override
@@ -39,13 +55,44 @@ public class TestingQueues implements Queues {
     tasks.clear();
   }
 
+  @Override
+  public void setErrorHandler(final String queueName, final QueueErrorHandler handler) {
+    errorHandlers.put(queueName, handler);
+  }
+
+  @Override
+  public void setTaskTracker(final TaskTracker tracker) {
+    this.tracker = tracker;
+  }
+
+  @Override
+  public void setMetricsRecorder(final MetricsRecorder metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public int trimMemory(final int actions, final String[] deferrable) {
+    return 0;
+  }
+
+  @Override
+  public int getPoolSize() {
+    return -1;
+  }
+
+  @Override
+  public long getOldestAddTime(final String queueName) {
+    return 0;
+  }
+
   public String getLastQueueName() {
     return lastQueueName;
   }
 
   public void executeAll() {
-    for (Runnable command : tasks) {
-      command.run();
+    // queues reschedule themselves while running
+    for (int i = 0; i < tasks.size(); i++) {
+      tasks.get(i).run();
     }
     tasks.clear();
   }
@@ -0,0 +1,68 @@
+package com.stanfy.enroscar.goro;
+
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.StringWriter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link TimelineRecorder}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = Build.VERSION_CODES.LOLLIPOP)
+public class TimelineRecorderTest {
+
+  /** Instance under tests. */
+  private TimelineRecorder recorder;
+
+  /** Test task. */
+  private Runnable task;
+
+  @Before
+  public void init() {
+    recorder = new TimelineRecorder(4);
+    task = new Runnable() {
+      @Override
+      public void run() {
+        // nothing
+      }
+    };
+  }
+
+  @Test
+  public void shouldWriteTaskSlices() throws Exception {
+    recorder.tracker.onStarted("q\"1", task, 5000);
+    recorder.tracker.onFinished("q\"1", task, 1000, false);
+
+    StringWriter out = new StringWriter();
+    recorder.writeTrace(out);
+    String json = out.toString();
+    assertThat(json)
+        .startsWith("{\"traceEvents\":[")
+        .contains("\"ph\":\"b\"", "\"ph\":\"e\"", "\"ph\":\"B\"", "\"ph\":\"E\"")
+        .contains("\"name\":\"" + task.getClass().getName() + "\"")
+        .contains("\"args\":{\"queue\":\"q\\\"1\"}")
+        .contains("\"name\":\"thread_name\"")
+        .endsWith("],\"displayTimeUnit\":\"ms\"}");
+  }
+
+  @Test
+  public void shouldKeepRecentEvents() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      recorder.tracker.onStarted("q", task, 0);
+      recorder.tracker.onFinished("q", task, 0, false);
+    }
+    StringWriter out = new StringWriter();
+    recorder.writeTrace(out);
+    // 2 tasks fit into 4 events
+    assertThat(out.toString().split("\"ph\":\"B\"")).hasSize(3);
+  }
+
+}
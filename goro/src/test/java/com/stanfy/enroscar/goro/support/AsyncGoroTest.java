@@ -5,18 +5,23 @@ import android.os.Build;
 import com.stanfy.enroscar.async.Async;
 import com.stanfy.enroscar.async.AsyncObserver;
 import com.stanfy.enroscar.goro.BuildConfig;
+import com.stanfy.enroscar.goro.FutureObserver;
 import com.stanfy.enroscar.goro.Goro;
 import com.stanfy.enroscar.goro.ObservableFuture;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -63,4 +68,66 @@ public class AsyncGoroTest {
     verify(goro, never()).schedule(anyString(), any(Callable.class));
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void sharedReplicasShouldScheduleTaskOnce() {
+    Callable<?> task = mock(Callable.class);
+    Async<?> async = asyncGoro.scheduleShared("1", task, 0);
+    Async<?> replica = async.replicate();
+    async.subscribe(mock(AsyncObserver.class));
+    replica.subscribe(mock(AsyncObserver.class));
+    verify(goro, times(1)).schedule("1", task);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void sharedTaskShouldBeCanceledByLastReplica() {
+    ObservableFuture<?> future = mock(ObservableFuture.class);
+    doReturn(future).when(goro).schedule(anyString(), any(Callable.class));
+    Async<?> async = asyncGoro.scheduleShared("1", mock(Callable.class), 0);
+    Async<?> replica = async.replicate();
+    async.subscribe(mock(AsyncObserver.class));
+
+    async.cancel();
+    async.cancel();
+    verify(future, never()).cancel(anyBoolean());
+    replica.cancel();
+    verify(future).cancel(true);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void sharedResultShouldBeRetained() {
+    ObservableFuture<String> future = mock(ObservableFuture.class);
+    doReturn(future).when(goro).schedule(anyString(), any(Callable.class));
+    Async<String> async = asyncGoro.scheduleShared("1", mock(Callable.class), 100);
+    async.subscribe(mock(AsyncObserver.class));
+    ArgumentCaptor<FutureObserver> observer = ArgumentCaptor.forClass(FutureObserver.class);
+    // shared execution subscribes first
+    verify(future, times(2)).subscribe(observer.capture());
+    doReturn(true).when(future).isDone();
+    observer.getAllValues().get(0).onSuccess("ok");
+
+    async.replicate().subscribe(mock(AsyncObserver.class));
+    verify(goro, times(1)).schedule(anyString(), any(Callable.class));
+
+    ShadowLooper.idleMainLooper(200);
+    async.replicate().subscribe(mock(AsyncObserver.class));
+    verify(goro, times(2)).schedule(anyString(), any(Callable.class));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void sharedErrorShouldNotBeRetained() throws Exception {
+    ObservableFuture<String> future = mock(ObservableFuture.class);
+    doReturn(future).when(goro).schedule(anyString(), any(Callable.class));
+    Async<String> async = asyncGoro.scheduleShared("1", mock(Callable.class), 100);
+    async.subscribe(mock(AsyncObserver.class));
+    doReturn(true).when(future).isDone();
+    doThrow(new ExecutionException(new Exception("fail"))).when(future).get();
+
+    async.replicate().subscribe(mock(AsyncObserver.class));
+    verify(goro, times(2)).schedule(anyString(), any(Callable.class));
+  }
+
 }
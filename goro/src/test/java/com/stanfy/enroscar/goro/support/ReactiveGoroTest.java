@@ -0,0 +1,190 @@
+package com.stanfy.enroscar.goro.support;
+
+import com.stanfy.enroscar.goro.BuildConfig;
+import com.stanfy.enroscar.goro.Goro;
+import com.stanfy.enroscar.goro.TestingQueues;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+import static com.stanfy.enroscar.goro.GoroImplTest.createGoroWith;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 19)
+public class ReactiveGoroTest {
+
+  private ReactiveGoro reactiveGoro;
+  private TestingQueues queues = new TestingQueues();
+
+  /** Items requested from the upstream. */
+  private long upstreamRequested;
+
+  @Before
+  public void init() {
+    reactiveGoro = new ReactiveGoro(createGoroWith(queues));
+  }
+
+  @Test
+  public void mapShouldKeepOrderAndLimitTasksInFlight() {
+    Publisher<String> results = reactiveGoro.map("test", 2, items(1, 2, 3),
+        new ReactiveGoro.TaskFactory<Integer, String>() {
+          @Override
+          public Callable<String> create(final Integer item) {
+            return new Callable<String>() {
+              @Override
+              public String call() {
+                return "r" + item;
+              }
+            };
+          }
+        });
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    results.subscribe(subscriber);
+    subscriber.subscription.request(1);
+    assertThat(upstreamRequested).isEqualTo(2);
+
+    queues.executeAll();
+    assertThat(subscriber.values).containsExactly("r1");
+    // one slot is free
+    assertThat(upstreamRequested).isEqualTo(3);
+
+    subscriber.subscription.request(10);
+    queues.executeAll();
+    assertThat(subscriber.values).containsExactly("r1", "r2", "r3");
+    assertThat(subscriber.completed).isTrue();
+    assertThat(subscriber.error).isNull();
+  }
+
+  @Test
+  public void taskErrorShouldTerminateStream() {
+    final Exception error = new Exception();
+    Publisher<String> results = reactiveGoro.map("test", 2, items(1, 2),
+        new ReactiveGoro.TaskFactory<Integer, String>() {
+          @Override
+          public Callable<String> create(final Integer item) {
+            return new Callable<String>() {
+              @Override
+              public String call() throws Exception {
+                throw error;
+              }
+            };
+          }
+        });
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    results.subscribe(subscriber);
+
+    queues.executeAll();
+    assertThat(subscriber.values).isEmpty();
+    assertThat(subscriber.error).isSameAs(error);
+    assertThat(subscriber.completed).isFalse();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void cancelledTaskShouldTerminateStream() {
+    Goro goro = spy(createGoroWith(queues));
+    final ArrayList<Future<?>> futures = new ArrayList<>();
+    doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(final InvocationOnMock invocation) throws Throwable {
+        Object future = invocation.callRealMethod();
+        futures.add((Future<?>) future);
+        return future;
+      }
+    }).when(goro).schedule(anyString(), any(Callable.class));
+
+    Publisher<String> results = new ReactiveGoro(goro).map("test", 2, items(1, 2),
+        new ReactiveGoro.TaskFactory<Integer, String>() {
+          @Override
+          public Callable<String> create(final Integer item) {
+            return new Callable<String>() {
+              @Override
+              public String call() {
+                return "r" + item;
+              }
+            };
+          }
+        });
+    RecordingSubscriber subscriber = new RecordingSubscriber();
+    results.subscribe(subscriber);
+    subscriber.subscription.request(2);
+
+    futures.get(0).cancel(false);
+    assertThat(subscriber.error).isInstanceOf(CancellationException.class);
+    assertThat(futures.get(1).isCancelled()).isTrue();
+    queues.executeAll();
+    assertThat(subscriber.values).isEmpty();
+  }
+
+  /** Publisher emitting items on request. */
+  private Publisher<Integer> items(final Integer... items) {
+    return new Publisher<Integer>() {
+      @Override
+      public void subscribe(final Subscriber<? super Integer> s) {
+        s.onSubscribe(new Subscription() {
+          int index;
+
+          @Override
+          public void request(final long n) {
+            upstreamRequested += n;
+            for (long i = 0; i < n && index < items.length; i++) {
+              s.onNext(items[index++]);
+              if (index == items.length) {
+                s.onComplete();
+              }
+            }
+          }
+
+          @Override
+          public void cancel() {
+            index = items.length;
+          }
+        });
+      }
+    };
+  }
+
+  /** Records received signals. */
+  private static final class RecordingSubscriber implements Subscriber<String> {
+    final ArrayList<String> values = new ArrayList<>();
+    Subscription subscription;
+    Throwable error;
+    boolean completed;
+
+    @Override
+    public void onSubscribe(final Subscription s) {
+      subscription = s;
+    }
+
+    @Override
+    public void onNext(final String value) {
+      values.add(value);
+    }
+
+    @Override
+    public void onError(final Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+
+}
@@ -1,6 +1,7 @@
 package com.stanfy.enroscar.goro.support;
 
 import com.stanfy.enroscar.goro.BuildConfig;
+import com.stanfy.enroscar.goro.StreamingTask;
 import com.stanfy.enroscar.goro.TestingQueues;
 
 import org.junit.Before;
@@ -9,12 +10,22 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import rx.Observable;
 import rx.Scheduler;
 import rx.Subscription;
+import rx.functions.Action0;
 import rx.observers.TestSubscriber;
 
 import static com.stanfy.enroscar.goro.GoroImplTest.createGoroWith;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.*;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(constants = BuildConfig.class, sdk = 19)
@@ -57,4 +68,187 @@ public class RxGoroTest {
     subscriber.assertNotCompleted();
   }
 
+  @Test
+  public void workerShouldSkipUnsubscribedActions() {
+    Scheduler.Worker worker = rxGoro.scheduler("test").createWorker();
+    final ArrayList<Integer> calls = new ArrayList<>();
+    worker.schedule(new AddAction(calls, 1));
+    Subscription second = worker.schedule(new AddAction(calls, 2));
+    worker.schedule(new AddAction(calls, 3));
+    second.unsubscribe();
+    assertThat(second.isUnsubscribed()).isTrue();
+
+    queues.executeAll();
+    assertThat(calls).containsExactly(1, 3);
+
+    worker.schedule(new AddAction(calls, 4));
+    queues.executeAll();
+    assertThat(calls).containsExactly(1, 3, 4);
+
+    worker.unsubscribe();
+    worker.schedule(new AddAction(calls, 5));
+    queues.executeAll();
+    assertThat(calls).containsExactly(1, 3, 4);
+  }
+
+  @Test
+  public void workerShouldReportActionErrors() {
+    Scheduler.Worker worker = rxGoro.scheduler("test").createWorker();
+    final ArrayList<Integer> calls = new ArrayList<>();
+    final IllegalStateException error = new IllegalStateException();
+    worker.schedule(new Action0() {
+      @Override
+      public void call() {
+        throw error;
+      }
+    });
+    worker.schedule(new AddAction(calls, 1));
+
+    Thread thread = Thread.currentThread();
+    Thread.UncaughtExceptionHandler original = thread.getUncaughtExceptionHandler();
+    Thread.UncaughtExceptionHandler handler = mock(Thread.UncaughtExceptionHandler.class);
+    thread.setUncaughtExceptionHandler(handler);
+    try {
+      queues.executeAll();
+    } finally {
+      thread.setUncaughtExceptionHandler(original);
+    }
+    verify(handler).uncaughtException(thread, error);
+    assertThat(calls).containsExactly(1);
+  }
+
+  @Test
+  public void workerShouldRecoverFromRejectedPost() {
+    final Executor delegate = mock(Executor.class);
+    final RejectedExecutionException error = new RejectedExecutionException();
+    doThrow(error).when(delegate).execute(any(Runnable.class));
+    queues.setDelegateExecutor(delegate);
+    Scheduler.Worker worker = rxGoro.scheduler("test").createWorker();
+    final ArrayList<Integer> calls = new ArrayList<>();
+    try {
+      worker.schedule(new AddAction(calls, 1));
+      fail("rejection expected");
+    } catch (RejectedExecutionException e) {
+      assertThat(e).isSameAs(error);
+    }
+
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    queues.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    worker.schedule(new AddAction(calls, 2));
+    assertThat(tasks).hasSize(1);
+    tasks.get(0).run();
+    assertThat(calls).containsExactly(2);
+  }
+
+  @Test
+  public void workerShouldDrainActionsInBatches() {
+    final ArrayList<Runnable> tasks = new ArrayList<>();
+    queues.setDelegateExecutor(new Executor() {
+      @Override
+      public void execute(@SuppressWarnings("NullableProblems") final Runnable command) {
+        tasks.add(command);
+      }
+    });
+    Scheduler.Worker worker = rxGoro.scheduler("test").createWorker();
+    final ArrayList<Integer> calls = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      worker.schedule(new AddAction(calls, i));
+    }
+    assertThat(tasks).hasSize(1);
+
+    tasks.get(0).run();
+    assertThat(calls).hasSize(16);
+    assertThat(tasks).hasSize(2);
+
+    tasks.get(1).run();
+    assertThat(calls).hasSize(20);
+    assertThat(tasks).hasSize(2);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void unsubscribeShouldCancelTask() throws Exception {
+    Callable<String> task = mock(Callable.class);
+    rxGoro.schedule("test", task).subscribe(new TestSubscriber<String>()).unsubscribe();
+    queues.executeAll();
+    verify(task, never()).call();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void scheduleSharedShouldExecuteTaskOnceForAllSubscribers() throws Exception {
+    Callable<String> task = mock(Callable.class);
+    when(task.call()).thenReturn("ok");
+    Observable<String> observable = rxGoro.scheduleShared("test", task);
+    TestSubscriber<String> s1 = new TestSubscriber<>();
+    TestSubscriber<String> s2 = new TestSubscriber<>();
+    observable.subscribe(s1);
+    observable.subscribe(s2);
+
+    queues.executeAll();
+    verify(task, times(1)).call();
+    s1.assertValue("ok");
+    s2.assertValue("ok");
+
+    // next subscription starts a new execution
+    observable.subscribe(new TestSubscriber<String>());
+    queues.executeAll();
+    verify(task, times(2)).call();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void scheduleSharedShouldCancelTaskWithoutSubscribers() throws Exception {
+    Callable<String> task = mock(Callable.class);
+    Observable<String> observable = rxGoro.scheduleShared("test", task);
+    Subscription s1 = observable.subscribe(new TestSubscriber<String>());
+    Subscription s2 = observable.subscribe(new TestSubscriber<String>());
+    s1.unsubscribe();
+    s2.unsubscribe();
+
+    queues.executeAll();
+    verify(task, never()).call();
+  }
+
+  @Test
+  public void stream() {
+    TestSubscriber<Integer> subscriber = new TestSubscriber<>();
+    rxGoro.stream("test", new StreamingTask<Integer>() {
+      @Override
+      public void run(final Emitter<Integer> emitter) throws Exception {
+        emitter.emit(1);
+        emitter.emit(2);
+      }
+    }).subscribe(subscriber);
+    subscriber.assertNoValues();
+
+    queues.executeAll();
+    subscriber.assertNoErrors();
+    subscriber.assertValues(1, 2);
+    subscriber.assertCompleted();
+  }
+
+  /** Adds a number to a list. */
+  private static final class AddAction implements Action0 {
+    /** Target list. */
+    private final List<Integer> calls;
+    /** Number to add. */
+    private final int n;
+
+    AddAction(final List<Integer> calls, final int n) {
+      this.calls = calls;
+      this.n = n;
+    }
+
+    @Override
+    public void call() {
+      calls.add(n);
+    }
+  }
+
 }